@@ -8,6 +8,9 @@ import java.util.*;
 
 public class Blob implements Serializable, Dumpable {
 
+    /** Pinned to the value Java derived for the first on-disk version of this class, so that existing blobs stay readable. */
+    private static final long serialVersionUID = 7911989829527035526L;
+
     private byte[] Content;
 
     public Blob(byte[] CONTENT) {
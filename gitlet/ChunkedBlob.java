@@ -0,0 +1,35 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A ChunkedBlob stands for the content of a large file, stored as a list of chunks (see Chunker) instead of one Blob.
+ * Each chunk is an ordinary Blob addressed by the SHA1 of its own bytes, so chunks shared between versions of a file,
+ * or between files, are stored once. The ChunkedBlob itself is stored under the SHA1 of the whole content, like a Blob. */
+
+public class ChunkedBlob implements Dumpable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> Chunks;
+    private final long Size;
+
+    public ChunkedBlob(List<String> chunks, long size) {
+        Chunks = new ArrayList<>(chunks);
+        Size = size;
+    }
+
+    /** SHA1s of the chunks, in the order their contents make up the file. */
+    public List<String> getChunks() {
+        return Chunks;
+    }
+
+    public long getSize() {
+        return Size;
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("Size: %d%nChunks: %s%n", Size, Chunks);
+    }
+}
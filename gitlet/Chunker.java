@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into content-defined chunks, used to store large files as a list of chunks (see ChunkedBlob).
+ * A chunk ends where a rolling "gear" hash of the last 64 bytes hits a fixed bit pattern, so boundaries depend on the content
+ * around them instead of on offsets: an edit only changes the chunks it touches, and the chunks after it line up again.
+ * Chunks are between MIN_SIZE and MAX_SIZE bytes long, about 1 MiB past MIN_SIZE on average. */
+
+class Chunker {
+
+    static final int MIN_SIZE = 256 * 1024;
+    static final int MAX_SIZE = 4 * 1024 * 1024;
+    /** A boundary is where these 20 bits of the hash are all zero. High bits are used since they depend on the most bytes. */
+    private static final long MASK = 0xfffff00000000000L;
+    /** One random value per byte value. Random is specified to give the same sequence for a seed on every JVM, so boundaries are stable. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(61);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[MAX_SIZE];
+    /** buf[start..end) holds bytes read but not yet returned in a chunk. */
+    private int start;
+    private int end;
+    private boolean eof;
+
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Return the next chunk, or null once the stream is exhausted. */
+    byte[] next() throws IOException {
+        System.arraycopy(buf, start, buf, 0, end - start);
+        end -= start;
+        start = 0;
+        while (!eof && end < buf.length) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
+        if (end == 0) {
+            return null;
+        }
+        int cut = boundary();
+        start = cut;
+        return Arrays.copyOfRange(buf, 0, cut);
+    }
+
+    /** The length of the chunk starting at buf[0], where buf[0..end) holds at most MAX_SIZE bytes. */
+    private int boundary() {
+        if (end <= MIN_SIZE) {
+            return end;
+        }
+        long h = 0;
+        for (int i = MIN_SIZE; i < end; i++) {
+            h = (h << 1) + GEAR[buf[i] & 0xff];
+            if ((h & MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -1,7 +1,15 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.*;
@@ -14,36 +22,148 @@ public class Commit implements Serializable, Dumpable {
 
     @Override
     public void dump() {
-        System.out.printf("Time Stamp: %s%nLog Message: %s%nBlobs: %s%nParent: %s%n", timeStamp, logMessage, Blobs, Parent);
+        System.out.printf("Time Stamp: %s%nLog Message: %s%nTree: %s%nBlobs: %s%nParent: %s%n", formatTimeStamp(), logMessage, RootTree, Blobs, Parent);
     }
 
+    /** Pinned to the value Java derived for the first on-disk version of this class, so that adding methods doesn't make existing commits unreadable. */
+    private static final long serialVersionUID = -7540100469525165488L;
+
+    /** Commits are stored with ObjectCodec now. These are the fields of the first on-disk version, which legacy commits were
+     * Java-serialized with: the time stamp was the formatted date string back then, see readObject. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("timeStamp", String.class),
+        new ObjectStreamField("logMessage", String.class),
+        new ObjectStreamField("Blobs", Map.class),
+        new ObjectStreamField("Parent", List.class),
+    };
+    private static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss yyyy Z";
+
     /** All instance variables of a Commit object */
-    String timeStamp;
+    long timeStamp; // seconds since the epoch
     String logMessage;
-    Map<File, String> Blobs = new HashMap<>(); // the String is the SHA1 of the blob object
+    /** SHA1 of the Tree of the project folder. Null for legacy commits, which list all their files in Blobs instead. */
+    String RootTree;
+    Map<File, String> Blobs; // the String is the SHA1 of the blob object. Built from RootTree on first use, see getBlobs
     List<String> Parent = new ArrayList<>();
+    /** SHA1 this commit is stored under, set once it's known, so it never has to be recomputed. */
+    transient String id;
 
     /** Static variables */
     static Repository repo = new Repository();
+    static ObjectStore store = new ObjectStore(repo);
+    static CommitGraph graph = new CommitGraph(repo, store);
+    static MessageIndex messages = new MessageIndex(repo, store);
+    static CommitCatalog catalog = new CommitCatalog(repo, store);
 
     /** Construct the initial commit object */
     public Commit() {
-        logMessage = "initial commit";
-        timeStamp =  new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z", Locale.ENGLISH).format(new Date(0));
+        this("initial commit", 0);
     }
 
     /** Construct a normal commit object based on current commit */
     public Commit(String Message) {
-        logMessage = Message;
-        timeStamp = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z", Locale.ENGLISH).format(new Date());
+        this(Message, System.currentTimeMillis() / 1000);
         Commit cur = getHeadCommit();
         Parent.add(cur.hash());
-        Blobs = cur.Blobs;
+        RootTree = cur.getRootTree();
+    }
+
+    /** Construct a commit with the given message and time stamp (in seconds since the epoch), no parents and no files. */
+    Commit(String Message, long TimeStamp) {
+        logMessage = Message;
+        timeStamp = TimeStamp;
+        RootTree = Tree.EMPTY;
+    }
+
+    /** All files of this commit by absolute path, with the SHA1s of their blobs. This reads every Tree of the commit,
+     * prefer blobAt for single files and Tree.diff to compare commits. The returned map must not be modified. */
+    Map<File, String> getBlobs() {
+        if (Blobs == null) {
+            Map<File, String> blobs = new HashMap<>();
+            for (Map.Entry<String, String> e : Tree.files(store, RootTree).entrySet()) {
+                blobs.put(absoluteFile(e.getKey()), e.getValue());
+            }
+            Blobs = blobs;
+        }
+        return Blobs;
+    }
+
+    /** The SHA1 of the blob of file F (an absolute path) in this commit, or null if the commit doesn't have it. */
+    String blobAt(File f) {
+        if (RootTree == null) {
+            return Blobs.get(f);
+        }
+        return Tree.lookup(store, RootTree, relativePath(f));
+    }
+
+    /** The SHA1 of the Tree of the project folder. For a legacy commit it's built from its Blobs and stored first. */
+    String getRootTree() {
+        if (RootTree != null) {
+            return RootTree;
+        }
+        Map<String, String> files = new HashMap<>();
+        for (Map.Entry<File, String> e : Blobs.entrySet()) {
+            files.put(relativePath(e.getKey()), e.getValue());
+        }
+        return Tree.update(store, null, files);
+    }
+
+    /** The path of file F (an absolute path) relative to the project folder, as it's named in Trees. */
+    static String relativePath(File f) {
+        return repo.PROJECT_FOLDER.toPath().relativize(f.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /** The absolute file of PATH, a path relative to the project folder as it's named in Trees. */
+    static File absoluteFile(String path) {
+        return Utils.join(repo.PROJECT_FOLDER, path.split("/"));
     }
 
-    /** Calculate SHA-1 for a normal Commit object. */
+    /** Calculate SHA-1 for a normal Commit object, which is the SHA1 of its encoding (see ObjectCodec).
+     * A commit read from the store returns the SHA1 it's stored under, which for legacy commits is the SHA1 of their Java serialization. */
     public String hash() {
-        return Utils.sha1((Object) Utils.serialize(this));
+        if (id == null) {
+            id = Utils.sha1((Object) ObjectCodec.encode(this));
+        }
+        return id;
+    }
+
+    /** The time stamp as printed by log, in the local time zone. */
+    String formatTimeStamp() {
+        return new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH).format(new Date(timeStamp * 1000));
+    }
+
+    /** Read a legacy Java-serialized commit, parsing its date string back to epoch seconds. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        logMessage = (String) fields.get("logMessage", null);
+        Blobs = (Map<File, String>) fields.get("Blobs", null);
+        Parent = (List<String>) fields.get("Parent", null);
+        try {
+            timeStamp = new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH).parse((String) fields.get("timeStamp", null)).getTime() / 1000;
+        } catch (ParseException excp) {
+            throw new IOException(excp);
+        }
+    }
+
+    /** Write a commit the way legacy commits were serialized, so the two stay interchangeable. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("timeStamp", formatTimeStamp());
+        fields.put("logMessage", logMessage);
+        fields.put("Blobs", getBlobs());
+        fields.put("Parent", Parent);
+        out.writeFields();
+    }
+
+    /** Read the commit with the given full SHA1 from the local object store. */
+    static Commit readCommit(String SHA1) {
+        return store.read(SHA1, Commit.class);
+    }
+
+    /** Read the blob with the given full SHA1 from the local object store. */
+    static Blob readBlob(String SHA1) {
+        return store.read(SHA1, Blob.class);
     }
 
 
@@ -64,10 +184,10 @@ public class Commit implements Serializable, Dumpable {
 //        Create the initial commit
         Commit INITIAL_COMMIT = new Commit();
         String SHA1 = INITIAL_COMMIT.hash();
-//        /** Store the initial commit */
-        final File INITIAL_COMMIT_FOLDER = Utils.join(repo.OBJECT_FOLDER, SHA1.substring(0,2));
-        INITIAL_COMMIT_FOLDER.mkdirs();
-        Utils.writeObject(Utils.join(INITIAL_COMMIT_FOLDER, SHA1.substring(2)), this);
+//        /** Store the initial commit and its (empty) tree */
+        ObjectStore store = new ObjectStore(repo);
+        Tree.update(store, null, Map.of());
+        store.write(SHA1, this);
 //        /** Set up the HEAD pointer */
         Utils.writeContents(repo.MASTER, SHA1);
         Utils.writeContents(repo.HEAD, "ref: " + repo.MASTER.getAbsolutePath());
@@ -84,14 +204,14 @@ public class Commit implements Serializable, Dumpable {
         if (HEAD_SHA1.startsWith("ref: ")) {
             HEAD_SHA1 = Utils.readContentsAsString(new File(HEAD_SHA1.substring(5)));
         }
-        return Utils.readObject(Utils.join(repo.OBJECT_FOLDER, HEAD_SHA1.substring(0,2), HEAD_SHA1.substring(2)), Commit.class);
+        return readCommit(HEAD_SHA1);
     }
 
     /** Get parents of the current commit. */
     public Commit[] getParents() {
         Commit[] res = new Commit[Parent.size()];
         for (int i = 0; i < Parent.size(); i++) {
-            res[i] = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, Parent.get(i).substring(0,2), Parent.get(i).substring(2)), Commit.class);
+            res[i] = readCommit(Parent.get(i));
         }
         return res;
     }
@@ -106,6 +226,11 @@ public class Commit implements Serializable, Dumpable {
      * If the argument "GIVEN_COMMIT" IS NOT NULL, we need to add the second parent to the new commit (in Gitlet, we only have at most two parents for a commit).
      * NOTE: Though commits made in detached state may not be accessed again if no branch was made for these commits, they still persist. */
     public void makeCommit(String logMessage, Commit GIVEN_COMMIT) {
+        makeCommit(logMessage, GIVEN_COMMIT, Utils.readObject(repo.STAGING_FILE, StagedFile.class));
+    }
+
+    /** Make a commit of the staging area STAGED, which may hold changes not written to the index file yet. */
+    private void makeCommit(String logMessage, Commit GIVEN_COMMIT, StagedFile staged) {
 
         // Clone the current HEAD commit to be the initial version of upcoming commit
         Commit newCommit = new Commit(logMessage);
@@ -113,27 +238,30 @@ public class Commit implements Serializable, Dumpable {
         if (GIVEN_COMMIT != null) {
             newCommit.Parent.add(GIVEN_COMMIT.hash());
         }
-        StagedFile staged = Utils.readObject(repo.STAGING_FILE, StagedFile.class);
         // if no change compare with HEAD commit, abort
         if (staged.Addition.isEmpty() && staged.Removal.isEmpty()) {
             System.out.println("No changes added to the commit.");
             System.exit(0);
         }
+        // Only the trees along the changed paths are written, all others are shared with the parent
+        Map<String, String> changes = new HashMap<>();
         for (File f : staged.Addition.keySet()) {
-            newCommit.Blobs.put(f, staged.Addition.get(f));
+            changes.put(relativePath(f), staged.Addition.get(f));
         }
         for (File f : staged.Removal) {
-            newCommit.Blobs.remove(f);
+            changes.put(relativePath(f), null);
         }
+        newCommit.RootTree = Tree.update(store, newCommit.RootTree, changes);
         // clear the StagingArea
         staged.Addition.clear();
         staged.Removal.clear();
         Utils.writeObject(repo.STAGING_FILE, staged);
         // Save the new commit object locally
-        String newSHA1 = Utils.sha1((Object) Utils.serialize(newCommit));
-        File COMMIT_FOLDER = Utils.join(repo.OBJECT_FOLDER, newSHA1.substring(0,2));
-        COMMIT_FOLDER.mkdir();
-        Utils.writeObject(Utils.join(COMMIT_FOLDER, newSHA1.substring(2)), newCommit);
+        String newSHA1 = newCommit.hash();
+        store.write(newSHA1, newCommit);
+        graph.add(newSHA1);
+        messages.add(newSHA1, newCommit.logMessage);
+        catalog.add(newSHA1, newCommit.timeStamp);
         // Update Pointers of HEAD commit or Branch according to whether in detached state
         if (!isDetached()) {
             Utils.writeContents(new File(Utils.readContentsAsString(repo.HEAD).substring(5)), newSHA1);
@@ -146,69 +274,79 @@ public class Commit implements Serializable, Dumpable {
     /** Print the commit history backwards along the HEAD commit.
      * If the HEAD commit is on a branch node (i.e. not in detached state), this command will print complete commit history of that branch. */
     public void log() {
-        Commit cur = getHeadCommit();
-        String SHA1 = cur.hash();
-        while (cur != null) {
+        String SHA1 = getHeadCommit().hash();
+        while (SHA1 != null) {
+            Commit cur = readCommit(SHA1);
             System.out.println("===");
             System.out.println("commit " + SHA1);
-            if (!cur.Parent.isEmpty()) {
-                if (cur.Parent.size() > 1) {
-                    System.out.println("Merge: " + cur.Parent.get(0).substring(0,7) + " " + cur.Parent.get(1).substring(0,7));
-                }
-                System.out.println("Date: " + cur.timeStamp);
-                System.out.println(cur.logMessage + "\n");
-                SHA1 = cur.Parent.get(0);
-                File COMMIT_FILE = Utils.join(repo.OBJECT_FOLDER, SHA1.substring(0,2), SHA1.substring(2));
-                cur = Utils.readObject(COMMIT_FILE, Commit.class);
-            } else {
-                System.out.println("Date: " + cur.timeStamp);
-                System.out.println(cur.logMessage + "\n");
-                cur = null;
+            if (cur.Parent.size() > 1) {
+                System.out.println("Merge: " + cur.Parent.get(0).substring(0,7) + " " + cur.Parent.get(1).substring(0,7));
             }
+            System.out.println("Date: " + cur.formatTimeStamp());
+            System.out.println(cur.logMessage + "\n");
+            SHA1 = graph.firstParent(SHA1);
         }
     }
 
     /** Print information of all commits ever made, including commits on multiple branches and experimental commits (commits on unspecified branch), the order doesn't matter. */
     public void logGlobal() {
-        for (File f : repo.OBJECT_FOLDER.listFiles()) {
-            for (String fileName : Utils.plainFilenamesIn(f)) {
-                String SHA1 = f.getName() + fileName;
-                File commitFile = Utils.join(repo.OBJECT_FOLDER.getPath(), f.getName(), fileName);
-                Serializable obj = Utils.readObject(commitFile,Serializable.class);
-                if (obj instanceof Commit) {
-                    Commit cur = (Commit) obj;
-                    System.out.println("===");
-                    System.out.println("commit " + SHA1);
-                    if (cur.Parent.size() > 1) {
-                        System.out.println("Merge: " + cur.Parent.get(0).substring(0,7) + " " + cur.Parent.get(1).substring(0,7));
-                    }
-                    System.out.println("Date: " + cur.timeStamp);
-                    System.out.println(cur.logMessage);
-                    System.out.println("\n");
-                }
+        logGlobal(false, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Print the commits made between SINCE and UNTIL (both in seconds since the epoch, inclusive), newest first if BYTIME.
+     * The commits are listed by the commit catalog and filtered by the time stamps it holds, so only the printed commits are read. */
+    public void logGlobal(boolean byTime, long since, long until) {
+        List<CommitCatalog.Entry> entries = new ArrayList<>();
+        for (CommitCatalog.Entry e : catalog.entries()) {
+            if (e.timeStamp >= since && e.timeStamp <= until) {
+                entries.add(e);
+            }
+        }
+        if (byTime) {
+            entries.sort((a, b) -> Long.compare(b.timeStamp, a.timeStamp));
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), Utils.BUFFER_SIZE));
+        for (CommitCatalog.Entry e : entries) {
+            Commit cur = readCommit(e.id);
+            out.println("===");
+            out.println("commit " + e.id);
+            if (cur.Parent.size() > 1) {
+                out.println("Merge: " + cur.Parent.get(0).substring(0,7) + " " + cur.Parent.get(1).substring(0,7));
             }
+            out.println("Date: " + cur.formatTimeStamp());
+            out.println(cur.logMessage);
+            out.println("\n");
         }
+        out.flush();
     }
 
     /** Print all commit ids that have the given log message */
     public void find(String logMessage) {
-        int cnt = 0;
-        for (File f : repo.OBJECT_FOLDER.listFiles()) {
-            for (String fileName : Utils.plainFilenamesIn(f)) {
-                String SHA1 = f.getName() + fileName;
-                // a file in .gitlet/object could either be a commit object or a blob object
-                Serializable cur = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, f.getName(), fileName), Serializable.class);
-                if (cur instanceof Commit) {
-                    if (((Commit) cur).logMessage.equals(logMessage)) {
-                        cnt += 1;
-                        System.out.println(SHA1);
-                    }
-                }
-            }
-        }
-        if (cnt == 0) {
+        printFound(messages.find(logMessage));
+    }
+
+    /** Print all commit ids whose log message contains the given text */
+    public void findContaining(String text) {
+        printFound(messages.findContaining(text));
+    }
+
+    /** Print all commit ids whose log message contains all the given words, in any order and case */
+    public void findWords(String words) {
+        printFound(messages.findWords(words));
+    }
+
+    /** Rebuild the index that find answers from, out of all commits in the object store */
+    public void reindex() {
+        messages.rebuild();
+    }
+
+    private void printFound(Set<String> ids) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        for (String SHA1 : ids) {
+            System.out.println(SHA1);
+        }
     }
 
     /** Create a new branch (a pointer) on HEAD commit, but not switch to it. */
@@ -279,8 +417,8 @@ public class Commit implements Serializable, Dumpable {
 //      update the working directory
         Commit cur = getHeadCommit();
         String CHECKOUT_ID = Utils.readContentsAsString(BRANCH_FILE);
-        Commit CHECKOUT_COMMIT = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, CHECKOUT_ID.substring(0,2), CHECKOUT_ID.substring(2)), Commit.class);
-        updateCWDFiles(cur, CHECKOUT_COMMIT);
+        Commit CHECKOUT_COMMIT = readCommit(CHECKOUT_ID);
+        updateCWDFiles(cur, CHECKOUT_COMMIT, w);
 //      update the HEAD pointer (and update the current branch head if checkout to a fetched branch with the same name)
         if (BRANCH_NAME.contains("/")) {
             String LOCAL_BRANCH_NAME = BRANCH_NAME.split("/")[1];
@@ -298,14 +436,13 @@ public class Commit implements Serializable, Dumpable {
     public void checkoutFile(String PATHNAME) {
         Commit cur = getHeadCommit();
         File TARGET_FILE = new File(PATHNAME);
-        if (!cur.Blobs.containsKey(TARGET_FILE)) {
+        String BLOB_SHA1 = cur.blobAt(TARGET_FILE);
+        if (BLOB_SHA1 == null) {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
         }
-        String contentHash = cur.Blobs.get(TARGET_FILE);
-        File BLOB_FILE = Utils.join(repo.OBJECT_FOLDER, contentHash.substring(0, 2), contentHash.substring(2));
-        Blob blob = Utils.readObject(BLOB_FILE, Blob.class);
-        Utils.writeContents(TARGET_FILE, (Object) blob.getContent());
+        TARGET_FILE.getParentFile().mkdirs();
+        store.copyBlobTo(BLOB_SHA1, TARGET_FILE);
         // Unstage the file if it's staged
         Watcher w = new Watcher();
         w.getStaged().Addition.remove(TARGET_FILE);
@@ -314,20 +451,20 @@ public class Commit implements Serializable, Dumpable {
     }
 
     public void checkoutCommitFile(String SHA1, String PATHNAME) {
-        File COMMIT_FILE = getCommitFile(SHA1);
-        if (COMMIT_FILE == null) {
+        String COMMIT_ID = getCommitId(SHA1);
+        if (COMMIT_ID == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
         }
         File TARGET_FILE = new File(PATHNAME).getAbsoluteFile();
-        Commit TARGET_COMMIT = Utils.readObject(COMMIT_FILE, Commit.class);
-        if (!TARGET_COMMIT.Blobs.containsKey(TARGET_FILE)) {
+        Commit TARGET_COMMIT = readCommit(COMMIT_ID);
+        String BLOB_SHA1 = TARGET_COMMIT.blobAt(TARGET_FILE);
+        if (BLOB_SHA1 == null) {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
         }
-        String contentHash = TARGET_COMMIT.Blobs.get(TARGET_FILE);
-        Blob blob = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, contentHash.substring(0,2), contentHash.substring(2)), Blob.class);
-        Utils.writeContents(TARGET_FILE, (Object) blob.getContent());
+        TARGET_FILE.getParentFile().mkdirs();
+        store.copyBlobTo(BLOB_SHA1, TARGET_FILE);
         // Unstage the file if it's staged
         Watcher w = new Watcher();
         w.getStaged().Addition.remove(TARGET_FILE);
@@ -336,36 +473,57 @@ public class Commit implements Serializable, Dumpable {
     }
 
     /** Update files in CWD as the result of switching between commits.
-     * Here we suppose CWDFiles are identical with what's contained in the current commit's blobs. */
-    private void updateCWDFiles(Commit CURRENT_COMMIT, Commit CHECKOUT_COMMIT) {
-        // update CWD files
-        for (File f : CHECKOUT_COMMIT.Blobs.keySet()) {
-            if(CURRENT_COMMIT.Blobs.containsKey(f)) {
-                if(!CURRENT_COMMIT.Blobs.get(f).equals(CHECKOUT_COMMIT.Blobs.get(f))) {
-                    Blob blob = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, CHECKOUT_COMMIT.Blobs.get(f).substring(0,2), CHECKOUT_COMMIT.Blobs.get(f).substring(2)), Blob.class);
-                    Utils.writeContents(f, (Object) blob.getContent());
-                }
-            } else {
-                Blob blob = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, CHECKOUT_COMMIT.Blobs.get(f).substring(0,2), CHECKOUT_COMMIT.Blobs.get(f).substring(2)), Blob.class);
-                Utils.writeContents(f, (Object) blob.getContent());
-            }
-        }
-        for (File f : CURRENT_COMMIT.Blobs.keySet()) {
-            if(!CHECKOUT_COMMIT.Blobs.containsKey(f)) {
+     * Here we suppose CWDFiles are identical with what's contained in the current commit's blobs, as checked by W.
+     * Only the files that differ are touched, and directories that are the same Tree in both commits aren't even looked into.
+     * Files are deleted first (along with the folders they leave empty), so a folder can be replaced by a file and the other way round.
+     * Then the blobs are read and written out on the worker threads, skipping files whose content W already found to be the target's.
+     * The stat data of the written files goes to the index, so the next status doesn't have to hash them again. */
+    private void updateCWDFiles(Commit CURRENT_COMMIT, Commit CHECKOUT_COMMIT, Watcher w) {
+        List<Tree.Change> writes = new ArrayList<>();
+        List<File> deleted = new ArrayList<>();
+        for (Tree.Change c : Tree.diff(store, CURRENT_COMMIT.getRootTree(), CHECKOUT_COMMIT.getRootTree())) {
+            File f = absoluteFile(c.path);
+            if (c.after == null) {
                 f.delete();
+                deleteEmptyFolders(f.getParentFile());
+                deleted.add(f);
+            } else if (!c.after.equals(w.knownHash(f))) {
+                writes.add(c);
             }
         }
+        List<StagedFile.Stat> stats = Parallel.map(writes, c -> {
+            File f = absoluteFile(c.path);
+            f.getParentFile().mkdirs();
+            store.copyBlobTo(c.after, f);
+            StagedFile.Stat stat = StagedFile.Stat.of(f);
+            return stat == null ? null : stat.withHash(c.after);
+        });
+        Map<File, StagedFile.Stat> written = new HashMap<>();
+        for (int i = 0; i < writes.size(); i++) {
+            written.put(absoluteFile(writes.get(i).path), stats.get(i));
+        }
+        w.checkedOut(written, deleted);
+        w.saveStats();
+    }
 
+    /** Delete FOLDER if it's empty, and so on up to the project folder. */
+    static void deleteEmptyFolders(File folder) {
+        while (!folder.equals(repo.PROJECT_FOLDER) && folder.delete()) {
+            folder = folder.getParentFile();
+        }
     }
 
     /** Exam whether untracked files exist in current commit. By 'untracked files', we mean any file that is modified/deleted/added and haven't being commited.
      * If so, we shall lose changes to the current branch due to "checkout branch", so abort the program to prevent this. */
      private void isChangeCleared(Watcher w) {
-         if (w.getUntrackedFile()) {
+         boolean untracked = w.getUntrackedFile();
+         boolean changed = w.getChangedFile();
+         w.saveStats(); // keep what was hashed, whatever the outcome
+         if (untracked) {
              System.out.println("There is an untracked file in the way; delete it or add and commit it first.");
              System.exit(0);
          }
-         if (w.getChangedFile()) {
+         if (changed) {
              System.out.println("You have unstaged changes; undo or stage and commit it.");
              System.exit(0);
          }
@@ -382,46 +540,43 @@ public class Commit implements Serializable, Dumpable {
 //        /** make sure that we won't lose any uncommited changes due to this switch operation. */
         isChangeCleared(w);
 //        /** make sure that the target commit exist */
-        File COMMIT_FILE = getCommitFile(SHA1);
-        if (COMMIT_FILE == null) {
+        String COMMIT_ID = getCommitId(SHA1);
+        if (COMMIT_ID == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
         }
 //      update the working directory and move the current branch head back to this commit
         Commit cur = getHeadCommit();
-        Commit target = Utils.readObject(COMMIT_FILE, Commit.class);
-        updateCWDFiles(cur, target);
+        Commit target = readCommit(COMMIT_ID);
+        updateCWDFiles(cur, target, w);
         File CURRENT_BRANCH = new File(Utils.readContentsAsString(repo.HEAD).substring(5));
-        Utils.writeContents(CURRENT_BRANCH, SHA1);
+        Utils.writeContents(CURRENT_BRANCH, COMMIT_ID);
     }
 
-    /** Get the commit file based on given SHA1, abbreviated or not. */
-    private File getCommitFile(String SHA1) {
-        File COMMIT_FOLDER = Utils.join(repo.OBJECT_FOLDER, SHA1.substring(0,2));
-        if (!COMMIT_FOLDER.exists()) {
-            return null;
-        }
-        if (SHA1.length() < 40) {
-            for (String fileName : Utils.plainFilenamesIn(COMMIT_FOLDER)) {
-                if (fileName.startsWith(SHA1.substring(2))) {
-                    return Utils.join(COMMIT_FOLDER, fileName);
-                }
+    /** Get the full SHA1 of a commit based on given SHA1, abbreviated or not. Returns null if no commit matches.
+     * Objects that aren't commits are ignored, and if more than one commit matches, the id is ambiguous and we abort. */
+    static String getCommitId(String SHA1) {
+        List<String> matches = new ArrayList<>();
+        for (String id : store.idsWithPrefix(SHA1)) {
+            if (store.header(id).type == ObjectCodec.COMMIT) {
+                matches.add(id);
             }
-            return null;
         }
-        else {
-            for (String fileName : Utils.plainFilenamesIn(COMMIT_FOLDER)) {
-                if (fileName.equals(SHA1.substring(2))) {
-                    return Utils.join(COMMIT_FOLDER, fileName);
-                }
-            }
-            return null;
+        if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id, it matches " + matches.size() + " commits.");
+            System.exit(0);
         }
+        return matches.isEmpty() ? null : matches.get(0);
     }
 
-    private File getCommitFileRemote(String SHA1, File REMOTE_DIR) {
-        repo = new Repository(REMOTE_DIR); /** Redefining repo inside the method will not affect the static variable repo outside the method. */
-        return getCommitFile(SHA1);
+    /** The full SHA1 of the commit REV names: a local branch, a fetched branch ("remoteName/branchName"), or a commit id,
+     * abbreviated or not. Returns null if it names none. */
+    static String resolveRevision(String REV) {
+        File BRANCH_FILE = REV.contains("/") ? Utils.join(repo.REMOTE_REPO_FOLDER, REV) : Utils.join(repo.LOCAL_BRANCH_FOLDER, REV);
+        if (BRANCH_FILE.isFile()) {
+            return Utils.readContentsAsString(BRANCH_FILE);
+        }
+        return getCommitId(REV);
     }
 
     /** Merge the given branch into the current branch
@@ -438,7 +593,7 @@ public class Commit implements Serializable, Dumpable {
             System.exit(0);
         }
         String COMMIT_ID = Utils.readContentsAsString(BRANCH_FILE);
-        Commit target = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, COMMIT_ID.substring(0,2), COMMIT_ID.substring(2)), Commit.class);
+        Commit target = readCommit(COMMIT_ID);
         // make sure not to merge a branch with itself
         Commit cur = getHeadCommit();
         if (cur.hash().equals(target.hash())) {
@@ -447,7 +602,6 @@ public class Commit implements Serializable, Dumpable {
         }
         // Merge in various cases
         Commit sp = splitPoint(cur, target);
-        List<String> messageBox = new ArrayList<>(); // stores the messages that will be printed in terminal, for now we only have one potential message: "Encountered a merge conflict.\n"
         if (cur.hash().equals(sp.hash())) {
             checkoutBranch(branchName);
             System.out.println("Current branch fast-forwarded.");
@@ -456,128 +610,62 @@ public class Commit implements Serializable, Dumpable {
         if (target.hash().equals(sp.hash())) {
             System.out.println("Given branch is an ancestor of the current branch.");
             System.exit(0);
-        } else {
-            for (File f : sp.Blobs.keySet()) {
-                if (!cur.Blobs.containsKey(f) && !target.Blobs.containsKey(f)) {
-                    continue; //3
-                }
-                else if (!cur.Blobs.containsKey(f) && target.Blobs.containsKey(f)) {
-                    if (target.Blobs.get(f).equals(sp.Blobs.get(f))) {
-                        continue; //7
-                    } else {
-                        conflict(cur, target, f, w, messageBox); //8.2
-                    }
-                }
-                else if (cur.Blobs.containsKey(f) && !target.Blobs.containsKey(f)) {
-                    if (cur.Blobs.get(f).equals(sp.Blobs.get(f))) {
-                        w.removeOne(f); //6
-                    } else {
-                        conflict(cur, target, f, w, messageBox); //8.2
-                    }
-                }
-                else {
-                    if (cur.Blobs.get(f).equals(target.Blobs.get(f))) {
-                        continue; //3
-                    }
-                    else {
-                        if (cur.Blobs.get(f).equals(sp.Blobs.get(f))) {
-                            checkoutCommitFile(target.hash(), f.getPath());
-                            w.addOne(f); //1
-                        }
-                        else if (target.Blobs.get(f).equals(sp.Blobs.get(f))) {
-                            continue; //2
-                        }
-                        else {
-                            conflict(cur, target, f, w, messageBox); //8.1
-                        }
-                    }
-                }
-            }
-            for (File f : cur.Blobs.keySet()) {
-                if (!sp.Blobs.containsKey(f)) {
-                    if (!target.Blobs.containsKey(f)) {
-                        continue; //4
-                    } else {
-                        if (target.Blobs.get(f).equals(cur.Blobs.get(f))) {
-                            continue; //3
-                        } else {
-                            conflict(cur, target, f, w, messageBox); //8.3
-                        }
-                    }
-                }
-            }
-            for (File f : target.Blobs.keySet()) {
-                if (!sp.Blobs.containsKey(f)) {
-                    if (!cur.Blobs.containsKey(f)) {
-                        checkoutCommitFile(target.hash(), f.getPath());
-                        w.addOne(f); //5
-                    } else {
-                        if (cur.Blobs.get(f).equals(target.Blobs.get(f))) {
-                            continue; //3
-                        } else {
-                            conflict(cur, target, f, w, messageBox); //8.3
-                        }
-                    }
-                }
-            }
         }
-        makeCommit("Merged " + branchName + " into " + Utils.readContentsAsString(repo.HEAD).substring(5 + repo.LOCAL_BRANCH_FOLDER.getAbsolutePath().length() + 1) + ".\n", target);
-        if (!messageBox.isEmpty()) {
-            System.out.println(messageBox.get(0));
+        // The whole result is worked out from the trees first, then applied to CWD and the index in one batch
+        MergeEngine.Result result = new MergeEngine(store).merge(sp.getRootTree(), cur.getRootTree(), target.getRootTree());
+        applyMerge(result, cur, w);
+        makeCommit("Merged " + branchName + " into " + Utils.readContentsAsString(repo.HEAD).substring(5 + repo.LOCAL_BRANCH_FOLDER.getAbsolutePath().length() + 1) + ".\n", target, w.getStaged());
+        if (!result.conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.\n");
         }
     }
 
-    /** Find the split point of current branch and given branch. (Graph traverse)
-     * The major logic is that: select all commits that can be tracked from both branch heads,
-     * the one closet to the branch head(choose either the current or the given one) is the splitPoint.
-     * i.e. the LATEST COMMON ANCESTOR of the two branch head */
-    private Commit splitPoint(Commit current, Commit target) {
-        CommitTree currentTree = new CommitTree(current);
-        CommitTree targetTree = new CommitTree(target);
-        HashMap<String, Integer> currentDistance = currentTree.getDistanceTable();
-        HashMap<String, Integer> targetDistance = targetTree.getDistanceTable();
-        Commit res = null;
-        int minDistance = Integer.MAX_VALUE;
-        for (String SHA1 : currentDistance.keySet()) {
-            if(targetDistance.containsKey(SHA1)) {
-                int minDistanceNew = Math.min(currentDistance.get(SHA1), minDistance);
-                if (minDistanceNew != minDistance) {
-                    res = Utils.readObject(Utils.join(repo.OBJECT_FOLDER, SHA1.substring(0,2), SHA1.substring(2)), Commit.class);
-                    minDistance = minDistanceNew;
-                }
+    /** Apply the RESULT of merging into the current commit CUR to CWD and stage it, as in updateCWDFiles: removed files go first,
+     * then the files taking another blob are written on the worker threads. The blobs of files merged line by line are stored first,
+     * and their content is written as it is, without being read back. The index isn't written, the merge commit does it. */
+    private void applyMerge(MergeEngine.Result result, Commit cur, Watcher w) {
+        StagedFile staged = w.getStaged();
+        List<String> writes = new ArrayList<>();
+        List<File> deleted = new ArrayList<>();
+        for (Map.Entry<String, String> e : result.changes.entrySet()) {
+            File f = absoluteFile(e.getKey());
+            if (e.getValue() == null) {
+                f.delete();
+                deleteEmptyFolders(f.getParentFile());
+                deleted.add(f);
+                staged.Removal.add(f);
+            } else {
+                writes.add(e.getKey());
+                staged.Addition.put(f, e.getValue());
             }
         }
-        return res;
+        for (Map.Entry<String, byte[]> e : result.contents.entrySet()) {
+            store.writeBlob(result.changes.get(e.getKey()), e.getValue(), cur.blobAt(absoluteFile(e.getKey())));
+        }
+        List<StagedFile.Stat> stats = Parallel.map(writes, path -> {
+            File f = absoluteFile(path);
+            f.getParentFile().mkdirs();
+            byte[] merged = result.contents.get(path);
+            if (merged != null) {
+                Utils.writeContents(f, (Object) merged);
+            } else {
+                store.copyBlobTo(result.changes.get(path), f);
+            }
+            StagedFile.Stat stat = StagedFile.Stat.of(f);
+            return stat == null ? null : stat.withHash(result.changes.get(path));
+        });
+        Map<File, StagedFile.Stat> written = new HashMap<>();
+        for (int i = 0; i < writes.size(); i++) {
+            written.put(absoluteFile(writes.get(i)), stats.get(i));
+        }
+        w.checkedOut(written, deleted);
     }
 
-    /** Generate the conflicted file (without solving it) and put it in CWD */
-    private void conflict(Commit CURRENT_COMMIT, Commit TARGET_COMMIT, File f, Watcher w, List<String> messageBox) {
-        // Get the specified file from the target commit
-        byte[] contentCurrent;
-        if (CURRENT_COMMIT.Blobs.get(f) == null) {
-            contentCurrent = new byte[]{};
-        } else {
-            File BLOB_FILE = Utils.join(repo.OBJECT_FOLDER,CURRENT_COMMIT.Blobs.get(f).substring(0,2), CURRENT_COMMIT.Blobs.get(f).substring(2));
-            contentCurrent = Utils.readObject(BLOB_FILE, Blob.class).getContent();
-        }
-        // Get the specified file from the target commit
-        byte[] contentTarget;
-        if (TARGET_COMMIT.Blobs.get(f) == null) {
-            contentTarget = new byte[]{};
-        } else {
-            File BLOB_FILE = Utils.join(repo.OBJECT_FOLDER,TARGET_COMMIT.Blobs.get(f).substring(0,2), TARGET_COMMIT.Blobs.get(f).substring(2));
-            contentTarget = Utils.readObject(BLOB_FILE, Blob.class).getContent();
-        }
-        // Generate the conflicted file
-        String header = "<<<<<<< HEAD\n";
-        String splitter = "=======\n";
-        String footer = ">>>>>>>\n";
-        Utils.writeContents(f, header, contentCurrent, splitter, contentTarget, footer);
-        w.addOne(f);
-        // Enrich the messageBox
-        if (messageBox.isEmpty()) {
-            messageBox.add("Encountered a merge conflict.\n");
-        }
+    /** Find the split point of current branch and given branch. (Graph traverse)
+     * The split point is the LATEST COMMON ANCESTOR of the two branch heads: a commit that can be tracked from both of them,
+     * and isn't an ancestor of another such commit. The commit-graph finds it walking back only as far as the branches diverged. */
+    private Commit splitPoint(Commit current, Commit target) {
+        return readCommit(graph.mergeBase(current.hash(), target.hash()));
     }
 
     /** Going remote
@@ -585,10 +673,10 @@ public class Commit implements Serializable, Dumpable {
      * NOTE: The remote repository only contains .gitlet/ folder
      * */
 
-    /** Add a remote repository with the given name and directory. */
+    /** Add a remote repository with the given name and directory, or gitlet:// URL of a repository served by "gitlet serve" (see Transport). */
     public void addRemote(String name, String directory) {
-        // Make sure we are linking with a Gitlet system, not some random directory
-        if (!new File(directory, ".gitlet").exists()) {
+        // Make sure we are linking with a Gitlet system, not some random directory. A served one is only reached when it's used.
+        if (Transport.of(directory) == null && !new File(directory, ".gitlet").exists()) {
             System.out.println("Remote directory not found.");
             System.exit(0);
         }
@@ -629,83 +717,49 @@ public class Commit implements Serializable, Dumpable {
             System.out.println("Remote directory not found.");
             System.exit(0);
         }
+        String HEAD_PATH = Utils.readContentsAsString(repoLocal.HEAD).substring(5);  /** here we assume NO detached state exists. */
+        String HEAD_SHA1 = Utils.readContentsAsString(new File(HEAD_PATH));
+        File LOCAL_REMOTE_BRANCH = Utils.join(REMOTE_FILE, REMOTE_BRANCH_NAME);
+        String REMOTE_PATH = Utils.readContentsAsString(Utils.join(REMOTE_FILE, ".repoLocation")).substring(5);
+        Transport transport = Transport.of(REMOTE_PATH);
+        if (transport != null) { //// a served repository does the same on its side, see Daemon
+            transport.push(REMOTE_BRANCH_NAME, HEAD_SHA1, store, graph);
+            Utils.writeContents(LOCAL_REMOTE_BRANCH, HEAD_SHA1);
+            return;
+        }
         // if the remote repository that we are pushing to doesn't exist, abort.
-        String REMOTE_PATH = Utils.readContentsAsString(Utils.join(REMOTE_FILE, ".repoLocation"));
         File REMOTE_REPO = new File(REMOTE_PATH);
         if (!REMOTE_REPO.exists()) {
             System.out.println("Remote directory not found.");
             System.exit(0);
         }
         // Pushing
-        String HEAD_PATH = Utils.readContentsAsString(repoLocal.HEAD).substring(5);  /** here we assume NO detached state exists. */
-        String HEAD_SHA1 = Utils.readContentsAsString(new File(HEAD_PATH));
         Repository repoRemote = new Repository(REMOTE_REPO);
         File REMOTE_BRANCH = Utils.join(repoRemote.LOCAL_BRANCH_FOLDER, REMOTE_BRANCH_NAME);
-        if (!REMOTE_BRANCH.exists()) {//// if the remote branch doesn't exist, create it and push the current local branch to it.
-            Utils.writeContents(REMOTE_BRANCH, HEAD_SHA1);
-        }
-        else {//// if the remote branch exists, append the local branch to it if the local branch is an update of the remote branch.
-            String REMOTE_HEAD_SHA1 = Utils.readContentsAsString(REMOTE_BRANCH);
-            HashMap<String, Serializable> APPEND = appendTemp(HEAD_SHA1, REMOTE_HEAD_SHA1, null);
-            if (APPEND == null) {
-                System.out.println("Please pull down remote changes before pushing.");
-                System.exit(0);
-            }
-            for (String SHA1 : APPEND.keySet()) {
-                File COMMIT_FOLDER = Utils.join(repoRemote.OBJECT_FOLDER, SHA1.substring(0,2));
-                COMMIT_FOLDER.mkdirs();
-                Utils.writeObject(Utils.join(COMMIT_FOLDER, SHA1.substring(2)), APPEND.get(SHA1));
-            }
+        //// if the remote branch exists, the local branch can only be pushed to it if it's an update of the remote branch.
+        if (REMOTE_BRANCH.exists() && !graph.isAncestor(Utils.readContentsAsString(REMOTE_BRANCH), HEAD_SHA1)) {
+            System.out.println("Please pull down remote changes before pushing.");
+            System.exit(0);
         }
+        //// send only the objects the remote repo doesn't have yet, whether the branch is new or not
+        ObjectStore storeRemote = new ObjectStore(repoRemote);
+        ObjectTransfer transfer = new ObjectTransfer(store, graph, storeRemote);
+        try {
+            transfer.negotiate(List.of(HEAD_SHA1), ObjectTransfer.heads(repoRemote));
+        } catch (GitletException excp) { // a corrupt object, nothing is copied
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+        transfer.copyTo(storeRemote);
+        ObjectTransfer.index(storeRemote, new MessageIndex(repoRemote, storeRemote), new CommitCatalog(repoRemote, storeRemote),
+            new CommitGraph(repoRemote, storeRemote), transfer.commits(), HEAD_SHA1);
         //// switch remote repo's HEAD to this newly updated branch
         Utils.writeContents(REMOTE_BRANCH, HEAD_SHA1);
         Utils.writeContents(repoRemote.HEAD, "ref: " + REMOTE_BRANCH.getAbsolutePath());
         //// record the remote head in the local repo
-        File LOCAL_REMOTE_BRANCH = Utils.join(REMOTE_FILE, REMOTE_BRANCH_NAME);
-        LOCAL_REMOTE_BRANCH.mkdirs();
         Utils.writeContents(LOCAL_REMOTE_BRANCH, HEAD_SHA1);
     }
 
-    /** Collect all commits and blobs of branch1's SHA1, meanwhile exam whether branch2's SHA1 is contained in branch1.
-     * if "fetchFrom" is null, then we are collecting for pushing, that is, read through branch history in LOCAL REPO,
-     * else, we are walking through branch history in REMOTE REPO, thus collecting for fetching */
-    private HashMap<String, Serializable> appendTemp(String source, String destination, File fetchFrom) {
-        HashMap<String, Serializable> res = new HashMap<>();
-        boolean found = false;
-        File commitFile;
-        if (fetchFrom != null) {
-            commitFile = getCommitFileRemote(source, fetchFrom);
-        } else {
-            commitFile = getCommitFile(source);
-        }
-        Commit cur = Utils.readObject(commitFile, Commit.class);
-        while (cur != null) {
-            // if reached the remote head, abort.
-            if (source.equals(destination)) {
-                found = true;
-                break;
-            }
-            // else, iterate and expand the append list
-            res.put(source, cur);
-            for (File f : cur.Blobs.keySet()) {
-                String BLOB_SHA1 = cur.Blobs.get(f);
-                File BLOB_FILE = Utils.join(repo.OBJECT_FOLDER, BLOB_SHA1.substring(0, 2), BLOB_SHA1.substring(2));
-                Blob blob = Utils.readObject(BLOB_FILE, Blob.class);
-                res.put(BLOB_SHA1, blob);
-            }
-            if (cur.Parent.isEmpty()) {
-                break;
-            }
-            source = cur.Parent.get(0);
-            commitFile = getCommitFile(source);
-            cur = Utils.readObject(commitFile, Commit.class);
-        }
-        if (!found) {
-            return null;
-        }
-        return res;
-    }
-
     /** Brings down commits and blobs from specific branch of the remote Gitlet repository into the local Gitlet repository's remote folder, NOT local branch folder. */
     public void fetchRemote(String REMOTE_NAME, String REMOTE_BRANCH_NAME) {
         // if not linked with the specific remote repository, abort.
@@ -715,8 +769,16 @@ public class Commit implements Serializable, Dumpable {
             System.out.println("Remote directory not found.");
             System.exit(0);
         }
+        File LOCAL_REMOTE_BRANCH = Utils.join(REPO_REMOTE, REMOTE_BRANCH_NAME);
+        String REMOTE_PATH = Utils.readContentsAsString(Utils.join(REPO_REMOTE, ".repoLocation")).substring(5);
+        Transport transport = Transport.of(REMOTE_PATH);
+        if (transport != null) { //// a served repository checks the branch and sends the objects, see Daemon
+            String REMOTE_HEAD_SHA1 = transport.fetch(REMOTE_BRANCH_NAME, repoLocal, store, messages, catalog, graph);
+            Utils.writeContents(LOCAL_REMOTE_BRANCH, REMOTE_HEAD_SHA1);
+            return;
+        }
         // if the remote repository doesn't exist, abort.
-        File REMOTE_FILE = new File(Utils.readContentsAsString(Utils.join(REPO_REMOTE, ".repoLocation")).substring(5));
+        File REMOTE_FILE = new File(REMOTE_PATH);
         Repository repoRemote = new Repository(REMOTE_FILE);
         if (!REMOTE_FILE.exists()) {
             System.out.println("Remote directory not found.");
@@ -728,19 +790,18 @@ public class Commit implements Serializable, Dumpable {
             System.out.println("That remote does not have that branch.");
             System.exit(0);
         }
-        // fetching
-        File LOCAL_REMOTE_BRANCH = Utils.join(REPO_REMOTE, REMOTE_BRANCH_NAME);
-        if (!LOCAL_REMOTE_BRANCH.exists()) {
-            Utils.writeContents(LOCAL_REMOTE_BRANCH, new Commit().hash());
-        }
+        // fetching: bring over only the objects the local repo doesn't have yet
         String REMOTE_HEAD_SHA1 = Utils.readContentsAsString(REMOTE_BRANCH);
-        String LOCAL_REMOTE_BRANCH_SHA1 = Utils.readContentsAsString(LOCAL_REMOTE_BRANCH);
-        HashMap<String, Serializable> APPEND = appendTemp(REMOTE_HEAD_SHA1, LOCAL_REMOTE_BRANCH_SHA1, REMOTE_FILE);
-        for (String SHA1 : APPEND.keySet()) { /** APPEND wouldn't be null in this case */
-            File COMMIT_FOLDER = Utils.join(repoLocal.OBJECT_FOLDER, SHA1.substring(0,2));
-            COMMIT_FOLDER.mkdirs();
-            Utils.writeObject(Utils.join(COMMIT_FOLDER, SHA1.substring(2)), APPEND.get(SHA1));
+        ObjectStore storeRemote = new ObjectStore(repoRemote);
+        ObjectTransfer transfer = new ObjectTransfer(storeRemote, new CommitGraph(repoRemote, storeRemote), store);
+        try {
+            transfer.negotiate(List.of(REMOTE_HEAD_SHA1), ObjectTransfer.heads(repoLocal));
+        } catch (GitletException excp) { // a corrupt object, nothing is copied
+            System.out.println(excp.getMessage());
+            System.exit(0);
         }
+        transfer.copyTo(store);
+        ObjectTransfer.index(store, messages, catalog, graph, transfer.commits(), REMOTE_HEAD_SHA1);
         Utils.writeContents(LOCAL_REMOTE_BRANCH, REMOTE_HEAD_SHA1); //// record this fetched branch into local repo's remote folder
     }
 
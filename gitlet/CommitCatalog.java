@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The catalog lists every commit of the repository with its time stamp, so global-log never has to look at the rest of the object store.
+ *
+ * It's saved in .gitlet/commit-catalog: "GCAT", version, then one fixed-size record per commit in the order they were added:
+ * the 20-byte id and the time stamp (seconds since the epoch). New commits are appended by commit, merge, fetch and push, without reading
+ * the rest. If the file is missing it's rebuilt from all commits in the object store.
+ * The file is only changed while holding the lock on commit-catalog.lock (see LockFile), as "gitlet serve" may append to it too.
+ * A record cut short by an interrupted append is cut off before the next one is appended, so the records stay aligned. */
+
+class CommitCatalog {
+
+    static final byte[] MAGIC = "GCAT".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    private static final int RECORD = ID_BYTES + 8;
+
+    /** A commit in the catalog. */
+    static class Entry {
+        final String id;
+        final long timeStamp;
+
+        Entry(String id, long timeStamp) {
+            this.id = id;
+            this.timeStamp = timeStamp;
+        }
+    }
+
+    private final File file;
+    private final LockFile lock;
+    private final ObjectStore store;
+
+    /** The catalog in memory, loaded on first use. */
+    private List<Entry> Entries;
+    private Set<String> Ids;
+
+    CommitCatalog(Repository repo, ObjectStore store) {
+        this.file = repo.COMMIT_CATALOG;
+        this.lock = new LockFile(new File(file.getPath() + ".lock"));
+        this.store = store;
+    }
+
+    private void load() {
+        if (Entries != null) {
+            return;
+        }
+        if (!file.isFile()) {
+            rebuild();
+            return;
+        }
+        Entries = new ArrayList<>();
+        Ids = new HashSet<>();
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] magic = new byte[MAGIC.length];
+        if (buf.remaining() >= HEADER) {
+            buf.get(magic);
+        }
+        if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION) {
+            rebuild();
+            return;
+        }
+        byte[] id = new byte[ID_BYTES];
+        while (buf.remaining() >= RECORD) { // a record cut short, or one being appended, is ignored
+            buf.get(id);
+            put(Utils.bytesToHex(id), buf.getLong());
+        }
+    }
+
+    private void put(String id, long timeStamp) {
+        if (Ids.add(id)) {
+            Entries.add(new Entry(id, timeStamp));
+        }
+    }
+
+    /** Record the commit with the given SHA1 and TIMESTAMP, which has just been made, so the catalog isn't read to look for it.
+     * Should it be in the catalog already all the same, the record is only there twice. */
+    void add(String SHA1, long timeStamp) {
+        if (file.length() < HEADER) { // rebuilt from the object store, which holds the commit already
+            load();
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        record.put(Utils.hexToBytes(SHA1));
+        record.putLong(timeStamp);
+        record.flip();
+        lock.locked(() -> {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                long end = HEADER + (ch.size() - HEADER) / RECORD * RECORD; // after the last whole record
+                ch.truncate(end);
+                try {
+                    while (record.hasRemaining()) {
+                        ch.write(record, end + record.position());
+                    }
+                } catch (IOException excp) {
+                    ch.truncate(end);
+                    throw excp;
+                }
+            }
+        });
+        if (Ids != null) {
+            put(SHA1, timeStamp);
+        }
+    }
+
+    /** Record the commit with the given SHA1 and TIMESTAMP, unless it's in the catalog already, as a commit received from another
+     * repository may be. */
+    void addIfMissing(String SHA1, long timeStamp) {
+        load();
+        if (!Ids.contains(SHA1)) {
+            add(SHA1, timeStamp);
+        }
+    }
+
+    /** Catalog all commits of the object store from scratch, replacing the saved catalog.
+     * The new catalog is written under a temporary name and renamed in place, holding the lock. */
+    void rebuild() {
+        Entries = new ArrayList<>();
+        Ids = new HashSet<>();
+        File temp = new File(file.getPath() + ".tmp");
+        lock.locked(() -> {
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                    out.write(MAGIC);
+                    out.writeInt(VERSION);
+                    for (String SHA1 : store.ids(ObjectCodec.COMMIT)) {
+                        long timeStamp = store.read(SHA1, Commit.class).timeStamp;
+                        out.write(Utils.hexToBytes(SHA1));
+                        out.writeLong(timeStamp);
+                        put(SHA1, timeStamp);
+                    }
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete(); // only left if it wasn't moved
+            }
+        });
+    }
+
+    /** All commits, in the order they were added to the catalog. */
+    List<Entry> entries() {
+        load();
+        return Entries;
+    }
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** The commit-graph keeps the shape of the history in compact arrays, so ancestry questions never have to decode a commit.
+ * Every commit gets a position; for each position we keep its parents' positions, its generation number and its time stamp.
+ * The generation number of a commit is 1 + the largest generation of its parents (1 for the initial commit), so an ancestor
+ * always has a smaller generation than its descendants, and a walk can stop as soon as generations rule out what it is looking for.
+ *
+ * It's saved in .gitlet/commit-graph: "GCGR", version, then one fixed-size record per commit in the order they were added,
+ * parents always before children: the 20-byte id, the positions of the first and second parent (-1 if none), the generation and the time stamp.
+ * New commits are appended, and commits missing from the file (e.g. in repositories older than it) are added on first use. */
+
+class CommitGraph {
+
+    static final byte[] MAGIC = "GCGR".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    private static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8;
+
+    private final File file;
+    private final ObjectStore store;
+
+    /** The graph in memory, loaded on first use. Position i holds Ids.get(i). */
+    private List<String> Ids;
+    private Map<String, Integer> Positions;
+    private int[] Parent1;
+    private int[] Parent2;
+    private int[] Generation;
+    private long[] Time;
+
+    CommitGraph(Repository repo, ObjectStore store) {
+        this.file = repo.COMMIT_GRAPH;
+        this.store = store;
+    }
+
+    /** Read the saved graph. A file that isn't a valid graph is discarded, and the graph is rebuilt as commits are looked up. */
+    private void load() {
+        if (Ids != null) {
+            return;
+        }
+        Ids = new ArrayList<>();
+        Positions = new HashMap<>();
+        Parent1 = new int[64];
+        Parent2 = new int[64];
+        Generation = new int[64];
+        Time = new long[64];
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] magic = new byte[MAGIC.length];
+        if (buf.remaining() >= HEADER) {
+            buf.get(magic);
+        }
+        if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION) {
+            file.delete();
+            return;
+        }
+        byte[] id = new byte[ID_BYTES];
+        while (buf.remaining() >= RECORD) { // a record cut short by an interrupted append is ignored
+            buf.get(id);
+            int p1 = buf.getInt();
+            int p2 = buf.getInt();
+            int generation = buf.getInt();
+            long time = buf.getLong();
+            if (p1 >= Ids.size() || p2 >= Ids.size()) {
+                Ids = null;
+                file.delete();
+                load();
+                return;
+            }
+            append(Utils.bytesToHex(id), p1, p2, generation, time);
+        }
+    }
+
+    private int append(String id, int p1, int p2, int generation, long time) {
+        int pos = Ids.size();
+        if (pos == Parent1.length) {
+            Parent1 = Arrays.copyOf(Parent1, pos * 2);
+            Parent2 = Arrays.copyOf(Parent2, pos * 2);
+            Generation = Arrays.copyOf(Generation, pos * 2);
+            Time = Arrays.copyOf(Time, pos * 2);
+        }
+        Ids.add(id);
+        Positions.put(id, pos);
+        Parent1[pos] = p1;
+        Parent2[pos] = p2;
+        Generation[pos] = generation;
+        Time[pos] = time;
+        return pos;
+    }
+
+    /** Add the commit with the given full SHA1, and all of its ancestors missing from the graph, reading them from the store.
+     * Returns its position. Throws IllegalArgumentException if a commit isn't in the store. */
+    int add(String SHA1) {
+        load();
+        Integer known = Positions.get(SHA1);
+        if (known != null) {
+            return known;
+        }
+        List<String> added = new ArrayList<>();
+        // depth-first, a commit is appended once all of its parents are in the graph
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(SHA1);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (Positions.containsKey(id)) {
+                stack.pop();
+                continue;
+            }
+            Commit c = store.read(id, Commit.class);
+            boolean ready = true;
+            for (String parent : c.Parent) {
+                if (!Positions.containsKey(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.pop();
+            int p1 = c.Parent.size() > 0 ? Positions.get(c.Parent.get(0)) : -1;
+            int p2 = c.Parent.size() > 1 ? Positions.get(c.Parent.get(1)) : -1;
+            int generation = 1 + Math.max(p1 < 0 ? 0 : Generation[p1], p2 < 0 ? 0 : Generation[p2]);
+            append(id, p1, p2, generation, c.timeStamp);
+            added.add(id);
+        }
+        save(added);
+        return Positions.get(SHA1);
+    }
+
+    /** Append the records of ADDED (in the order they were added) to the graph file. */
+    private void save(List<String> added) {
+        boolean fresh = !file.isFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (fresh) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (String id : added) {
+                int pos = Positions.get(id);
+                out.write(Utils.hexToBytes(id));
+                out.writeInt(Parent1[pos]);
+                out.writeInt(Parent2[pos]);
+                out.writeInt(Generation[pos]);
+                out.writeLong(Time[pos]);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** SHA1 of the first parent of the given commit, or null for the initial commit. */
+    String firstParent(String SHA1) {
+        int pos = add(SHA1);
+        return Parent1[pos] < 0 ? null : Ids.get(Parent1[pos]);
+    }
+
+    /** Whether the commit ANCESTOR is DESCENDANT or one of its ancestors. False if ANCESTOR isn't stored at all.
+     * Only commits whose generation is at least ANCESTOR's are walked through. */
+    boolean isAncestor(String ancestor, String descendant) {
+        if (!store.contains(ancestor)) {
+            return false;
+        }
+        int target = add(ancestor);
+        Deque<Integer> stack = new ArrayDeque<>();
+        Set<Integer> visited = new HashSet<>();
+        stack.push(add(descendant));
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == target) {
+                return true;
+            }
+            for (int parent : new int[]{Parent1[pos], Parent2[pos]}) {
+                if (parent >= 0 && Generation[parent] >= Generation[target] && visited.add(parent)) {
+                    stack.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the SHA1 of a best common ancestor of commits A and B: one that is not an ancestor of another common ancestor.
+     * Commits are visited from both sides in order of decreasing generation (then time), marking which side reached them. All children
+     * of a commit have a larger generation, so by the time it's visited it carries every mark it will get: the first one reached from
+     * both sides is the answer, and nothing older is looked at. */
+    String mergeBase(String a, String b) {
+        int posA = add(a);
+        int posB = add(b);
+        Map<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            if (Generation[x] != Generation[y]) {
+                return Integer.compare(Generation[y], Generation[x]);
+            }
+            return Long.compare(Time[y], Time[x]);
+        });
+        marks.put(posA, 1);
+        queue.add(posA);
+        if (marks.containsKey(posB)) {
+            return a;
+        }
+        marks.put(posB, 2);
+        queue.add(posB);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            int mark = marks.get(pos);
+            if (mark == 3) {
+                return Ids.get(pos);
+            }
+            for (int parent : new int[]{Parent1[pos], Parent2[pos]}) {
+                if (parent < 0) {
+                    continue;
+                }
+                Integer old = marks.get(parent);
+                if (old == null) {
+                    marks.put(parent, mark);
+                    queue.add(parent);
+                } else {
+                    marks.put(parent, old | mark);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the SHA1s of WANTS and their ancestors that aren't HAVES or ancestors of one of HAVES, all of which must be stored.
+     * Commits are visited in order of decreasing generation, marking which side reached them, as in mergeBase. A commit carries all of
+     * its marks by the time it's visited, and the walk stops as soon as every commit left to visit is reached from HAVES. */
+    Set<String> ancestorsExcept(Collection<String> wants, Collection<String> haves) {
+        Map<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> Integer.compare(Generation[y], Generation[x]));
+        int wantedOnly = 0; // commits in the queue reached from WANTS only
+        for (String have : haves) {
+            int pos = add(have);
+            if (marks.put(pos, 2) == null) {
+                queue.add(pos);
+            }
+        }
+        for (String want : wants) {
+            int pos = add(want);
+            if (!marks.containsKey(pos)) {
+                marks.put(pos, 1);
+                queue.add(pos);
+                wantedOnly += 1;
+            }
+        }
+        Set<String> res = new HashSet<>();
+        while (wantedOnly > 0) {
+            int pos = queue.poll();
+            int mark = marks.get(pos);
+            if (mark == 1) {
+                res.add(Ids.get(pos));
+                wantedOnly -= 1;
+            }
+            for (int parent : new int[]{Parent1[pos], Parent2[pos]}) {
+                if (parent < 0) {
+                    continue;
+                }
+                Integer old = marks.get(parent);
+                if (old == null) {
+                    marks.put(parent, mark);
+                    queue.add(parent);
+                    wantedOnly += mark == 1 ? 1 : 0;
+                } else if ((old | mark) != old) {
+                    marks.put(parent, old | mark);
+                    wantedOnly -= old == 1 ? 1 : 0; // only a commit reached from WANTS alone can gain the mark of HAVES
+                }
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** The server of "gitlet serve": serves the repositories in a folder to clients fetching from and pushing to gitlet:// remotes,
+ * see Transport for the protocol. The path of a URL names a repository relative to the served folder ("/" the folder itself),
+ * and never one outside it.
+ * Each connection is served on a thread of its own. The connections to one repository share its ObjectStore, which any number of them
+ * may read and write at once, since objects never change once stored. Everything else of a repository, the commit-graph, the indexes
+ * and the branches, is only used by one connection at a time (see Served). That lock is never held while waiting for a client: objects
+ * are negotiated and streamed without it, so a slow client doesn't hold the others back, and a pushed branch is moved only once all its
+ * objects are stored. A client that sends nothing for READ_TIMEOUT is dropped. */
+
+class Daemon {
+
+    /** A repository being served, and what its connections share. */
+    private static class Served {
+        final Repository repo;
+        final ObjectStore store;
+        /** Only used while holding the lock of this Served. */
+        final CommitGraph graph;
+        final MessageIndex messages;
+        final CommitCatalog catalog;
+
+        Served(File projectFolder) {
+            repo = new Repository(projectFolder);
+            store = new ObjectStore(repo);
+            graph = new CommitGraph(repo, store);
+            messages = new MessageIndex(repo, store);
+            catalog = new CommitCatalog(repo, store);
+        }
+    }
+
+    /** How long reading from a client may block, in milliseconds, before its connection is dropped. */
+    static final int READ_TIMEOUT = 60000;
+
+    private final File root;
+    private final Map<File, Served> served = new HashMap<>();
+
+    Daemon(File root) {
+        try {
+            this.root = root.getCanonicalFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Serve the repositories of the served folder on PORT of the address HOST, until the process is stopped. */
+    void run(String host, int port) {
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getByName(host))) {
+            System.out.println("Serving " + root + " on " + host + ":" + server.getLocalPort() + ".");
+            while (true) {
+                Socket socket = server.accept();
+                workers.execute(() -> serve(socket));
+            }
+        } catch (IOException | IllegalArgumentException excp) { // e.g. the port is taken, or out of range
+            System.out.println("Could not listen on " + host + ":" + port + ": " + excp.getMessage());
+            System.exit(0);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /** Answer one client. Failures end its connection only. */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(READ_TIMEOUT);
+            DataInputStream in = Transport.input(socket);
+            DataOutputStream out = Transport.output(socket);
+            byte[] magic = new byte[Transport.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, Transport.MAGIC) || in.readByte() != Transport.VERSION) {
+                return;
+            }
+            byte command = in.readByte();
+            String path = in.readUTF();
+            String branch = in.readUTF();
+            Served s = lookup(path);
+            try {
+                if (s == null) {
+                    error(out, "Remote directory not found.");
+                } else if (command == Transport.FETCH) {
+                    fetch(s, branch, in, out);
+                } else if (command == Transport.PUSH) {
+                    push(s, branch, in, out);
+                }
+            } catch (ProtocolException excp) { // e.g. a count larger than any the protocol allows
+                error(out, excp.getMessage());
+                throw excp;
+            }
+        } catch (EOFException excp) {
+            // the client went away, e.g. after finding it has to pull first
+        } catch (IOException | IllegalArgumentException | GitletException excp) {
+            System.err.println(socket.getRemoteSocketAddress() + ": " + excp.getMessage());
+        }
+    }
+
+    /** The repository at PATH in the served folder, null if there's none. */
+    private Served lookup(String path) throws IOException {
+        File folder = new File(root, path).getCanonicalFile();
+        if (!folder.toPath().startsWith(root.toPath()) || !Utils.join(folder, ".gitlet").isDirectory()) {
+            return null;
+        }
+        synchronized (served) {
+            return served.computeIfAbsent(folder, Served::new);
+        }
+    }
+
+    private static void error(DataOutputStream out, String message) throws IOException {
+        out.writeByte(Transport.ERROR);
+        out.writeUTF(message);
+        out.flush();
+    }
+
+    /** Send the client the objects of the history of BRANCH it doesn't have. The lock is only held to read the branch and the
+     * commit-graph, never while waiting for the client. */
+    private void fetch(Served s, String branch, DataInputStream in, DataOutputStream out) throws IOException {
+        File BRANCH_FILE = Utils.join(s.repo.LOCAL_BRANCH_FOLDER, branch);
+        String head;
+        synchronized (s) {
+            head = isBranchName(branch) && BRANCH_FILE.isFile() ? Utils.readContentsAsString(BRANCH_FILE) : null;
+        }
+        if (head == null) {
+            error(out, "That remote does not have that branch.");
+            return;
+        }
+        out.writeByte(Transport.OK);
+        Transport.writeId(out, head);
+        out.flush();
+        List<String> haves = Transport.readIds(in, Transport.MAX_IDS);
+        ObjectTransfer transfer = new ObjectTransfer(s.store, s.graph, Transport.has(in, out));
+        Set<String> missing;
+        synchronized (s) {
+            missing = transfer.missingCommits(List.of(head), haves);
+        }
+        transfer.negotiateObjects(List.of(head), missing);
+        Transport.send(s.store, transfer, out);
+    }
+
+    /** Receive the objects of the history of the client's commit, then point BRANCH to it if that is a fast-forward. */
+    private void push(Served s, String branch, DataInputStream in, DataOutputStream out) throws IOException {
+        if (!isBranchName(branch)) {
+            error(out, "Invalid branch name.");
+            return;
+        }
+        File BRANCH_FILE = Utils.join(s.repo.LOCAL_BRANCH_FOLDER, branch);
+        String current;
+        List<String> heads;
+        synchronized (s) {
+            current = BRANCH_FILE.isFile() ? Utils.readContentsAsString(BRANCH_FILE) : null;
+            heads = ObjectTransfer.heads(s.repo);
+        }
+        out.writeByte(Transport.OK);
+        out.writeBoolean(current != null);
+        if (current != null) {
+            Transport.writeId(out, current);
+        }
+        Transport.writeIds(out, heads);
+        out.flush();
+        List<String> commits;
+        try {
+            commits = Transport.receive(in, out, s.store);
+        } catch (GitletException excp) { // a corrupt object, the branch isn't moved
+            Transport.readId(in); // the head the client sent after the objects, read so the answer isn't lost in a reset
+            error(out, excp.getMessage());
+            return;
+        }
+        String head = Transport.readId(in);
+        synchronized (s) {
+            if (!s.store.contains(head)) {
+                error(out, "Incomplete push.");
+                return;
+            }
+            if (BRANCH_FILE.isFile() && !s.graph.isAncestor(Utils.readContentsAsString(BRANCH_FILE), head)) {
+                error(out, "Please pull down remote changes before pushing."); // moved by another push in the meantime
+                return;
+            }
+            ObjectTransfer.index(s.store, s.messages, s.catalog, s.graph, commits, head);
+            Utils.writeContents(BRANCH_FILE, head);
+            Utils.writeContents(s.repo.HEAD, "ref: " + BRANCH_FILE.getAbsolutePath());
+        }
+        out.writeByte(Transport.OK);
+        out.flush();
+    }
+
+    /** Whether NAME can name a branch file, and no other file. */
+    private static boolean isBranchName(String name) {
+        return !name.isEmpty() && !name.startsWith(".") && !name.contains("/") && !name.contains("\\");
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A Delta object stores a version of a file as the differences from another version, instead of a full Blob.
+ * It keeps the SHA1 of its base blob plus a list of instructions that rebuild the content from the base:
+ * COPY [offset] [length] copies a range of the base, INSERT [length] [bytes] inserts literal bytes.
+ * The base may itself be a Delta, Depth counts how many deltas have to be applied to rebuild this one. */
+
+public class Delta implements Dumpable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Longest chain of deltas we allow, so reading a blob never has to apply more than this many deltas. */
+    static final int MAX_DEPTH = 10;
+    /** Files smaller than this are always stored whole, the saving isn't worth a chain lookup. */
+    static final int MIN_SIZE = 512;
+
+    private static final int BLOCK = 16;
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    private final String Base;
+    private final int Depth;
+    private final byte[] Instructions;
+
+    Delta(String base, int depth, byte[] instructions) {
+        Base = base;
+        Depth = depth;
+        Instructions = instructions;
+    }
+
+    public String getBase() {
+        return Base;
+    }
+
+    public int getDepth() {
+        return Depth;
+    }
+
+    byte[] getInstructions() {
+        return Instructions;
+    }
+
+    /** Make a delta that rebuilds TARGET from BASE (whose SHA1 is BASESHA1, and which sits BASEDEPTH deltas deep).
+     * Returns null if the delta isn't worth storing, i.e. it wouldn't be less than half the size of TARGET. */
+    static Delta compute(String baseSHA1, int baseDepth, byte[] base, byte[] target) {
+        if (baseDepth + 1 > MAX_DEPTH || target.length < MIN_SIZE) {
+            return null;
+        }
+        byte[] instructions = diff(base, target, target.length / 2);
+        if (instructions == null) {
+            return null;
+        }
+        return new Delta(baseSHA1, baseDepth + 1, instructions);
+    }
+
+    /** Rebuild the content of this version from the content of its base. */
+    byte[] apply(byte[] base) {
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        int[] pos = {0};
+        while (pos[0] < Instructions.length) {
+            int op = Instructions[pos[0]++];
+            if (op == COPY) {
+                int offset = readVarInt(Instructions, pos);
+                int length = readVarInt(Instructions, pos);
+                res.write(base, offset, length);
+            } else {
+                int length = readVarInt(Instructions, pos);
+                res.write(Instructions, pos[0], length);
+                pos[0] += length;
+            }
+        }
+        return res.toByteArray();
+    }
+
+    /** Instructions rebuilding TARGET from BASE, or null as soon as they grow beyond LIMIT bytes.
+     * Every BLOCK-aligned block of BASE is indexed by its hash, then a rolling hash over TARGET finds blocks it shares with BASE.
+     * Each match is extended in both directions as far as the bytes agree and emitted as a COPY; bytes in between become INSERTs. */
+    private static byte[] diff(byte[] base, byte[] target, int limit) {
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            power *= 31;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int insertFrom = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = blocks.get(h);
+            if (candidate != null && Arrays.equals(base, candidate, candidate + BLOCK, target, i, i + BLOCK)) {
+                int start = i;
+                int from = candidate;
+                while (start > insertFrom && from > 0 && base[from - 1] == target[start - 1]) {
+                    start--;
+                    from--;
+                }
+                int end = i + BLOCK;
+                int to = candidate + BLOCK;
+                while (end < target.length && to < base.length && base[to] == target[end]) {
+                    end++;
+                    to++;
+                }
+                writeInsert(out, target, insertFrom, start);
+                out.write(COPY);
+                writeVarInt(out, from);
+                writeVarInt(out, end - start);
+                if (out.size() > limit) {
+                    return null;
+                }
+                insertFrom = end;
+                i = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * power) * 31 + target[i + BLOCK];
+            }
+            i++;
+        }
+        writeInsert(out, target, insertFrom, target.length);
+        return out.size() > limit ? null : out.toByteArray();
+    }
+
+    private static int hash(byte[] content, int from) {
+        int h = 0;
+        for (int i = from; i < from + BLOCK; i++) {
+            h = h * 31 + content[i];
+        }
+        return h;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] content, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarInt(out, to - from);
+            out.write(content, from, to - from);
+        }
+    }
+
+    /** Write N (non-negative) in 7-bit groups, low group first, the high bit marking that more groups follow. */
+    static void writeVarInt(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Read a number written by writeVarInt from CONTENT at POS[0], advancing POS[0] past it. */
+    static int readVarInt(byte[] content, int[] pos) {
+        int n = 0;
+        int shift = 0;
+        while (true) {
+            int b = content[pos[0]++] & 0xff;
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+            shift += 7;
+        }
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("Base: %s%nDepth: %d%nInstructions: %d bytes%n", Base, Depth, Instructions.length);
+    }
+}
@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/** The diff command, which shows the differences between two versions of the project, file by file:
+ * 1. diff: the working directory against the index, that is the changes not staged yet.
+ * 2. diff --cached: the index against the HEAD commit, that is the changes staged for the next commit.
+ * 3. diff [revision]: the working directory against a commit.
+ * 4. diff [revision] [revision]: two commits.
+ * A revision is a branch or a commit id, see Commit.resolveRevision. Only tracked files are compared, and files whose blob SHA1s are
+ * equal are skipped without being read: commits are compared with Tree.diff, which skips equal folders too, and working files are
+ * hashed from their stat data when it's unchanged (see Watcher.changesInCWD).
+ *
+ * Each changed file is printed as it's compared, in one of three formats:
+ * 1. PATCH: the changed lines of each file, as Git prints them without context lines (diff -U0).
+ * 2. STAT: one line per file with the number of changed lines and a bar of +/-, then the totals.
+ * 3. NAME_ONLY: only the paths of the changed files.
+ * The lines are compared with LineDiff. Bytes of files are written out as they are, never decoded.
+ * Files too large to be held in memory (see ObjectStore.isLarge, and working files longer than ObjectStore.STREAM_THRESHOLD) are
+ * never read: they are shown as binary files, told apart by their SHA1s alone. */
+
+class Diff {
+
+    enum Format { PATCH, STAT, NAME_ONLY }
+
+    /** Width of the output a --stat line is fitted in. */
+    static final int STAT_WIDTH = 80;
+    private static final String NULL_PATH = "/dev/null";
+    private static final byte[] NO_NEWLINE = "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Format format;
+    private final ObjectStore store;
+    private final OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), Utils.BUFFER_SIZE);
+
+    /** For STAT: one row per file (path, insertions, deletions, or the sizes of a binary file), printed once all are known. */
+    private final List<String> statPaths = new ArrayList<>();
+    private final List<long[]> statCounts = new ArrayList<>();
+    private final List<Boolean> statBinary = new ArrayList<>();
+
+    Diff(Format format, ObjectStore store) {
+        this.format = format;
+        this.store = store;
+    }
+
+    /** Print the differences selected by CACHED and REVISIONS (none, one or two of them, none if CACHED), see the class comment. */
+    void run(boolean cached, List<String> revisions) {
+        Commit head = Commit.getHeadCommit();
+        List<String> ids = new ArrayList<>();
+        for (String rev : revisions) {
+            String id = Commit.resolveRevision(rev);
+            if (id == null) {
+                System.out.println("At least one branch does not exist.");
+                System.exit(0);
+            }
+            ids.add(id);
+        }
+        if (ids.size() == 2) {
+            String before = Commit.readCommit(ids.get(0)).getRootTree();
+            String after = Commit.readCommit(ids.get(1)).getRootTree();
+            print(Tree.diff(store, before, after), false);
+        } else if (cached) {
+            List<Tree.Change> changes = new ArrayList<>();
+            StagedFile staged = Utils.readObject(new Repository().STAGING_FILE, StagedFile.class);
+            for (Map.Entry<File, String> e : staged.Addition.entrySet()) {
+                changes.add(new Tree.Change(Commit.relativePath(e.getKey()), head.blobAt(e.getKey()), e.getValue()));
+            }
+            for (File f : staged.Removal) {
+                changes.add(new Tree.Change(Commit.relativePath(f), head.blobAt(f), null));
+            }
+            print(sorted(changes), false);
+        } else {
+            Watcher w = new Watcher();
+            Map<File, String> base = ids.isEmpty() ? w.indexFiles() : Commit.readCommit(ids.get(0)).getBlobs();
+            List<Tree.Change> changes = w.changesInCWD(base);
+            w.saveStats();
+            print(changes, true);
+        }
+    }
+
+    private static List<Tree.Change> sorted(List<Tree.Change> changes) {
+        changes.sort(Comparator.comparing(c -> c.path));
+        return changes;
+    }
+
+    /** Print CHANGES, ordered by path. The content after a change is the working file if IN_CWD, a blob otherwise. */
+    private void print(List<Tree.Change> changes, boolean inCWD) {
+        try {
+            for (Tree.Change c : changes) {
+                if (format == Format.NAME_ONLY) {
+                    write(c.path + "\n");
+                    continue;
+                }
+                File file = inCWD && c.after != null ? Commit.absoluteFile(c.path) : null;
+                if (isLarge(c.before) || (file != null ? file.length() > ObjectStore.STREAM_THRESHOLD : isLarge(c.after))) {
+                    boolean stat = format == Format.STAT; // only it needs the sizes
+                    binary(c, stat ? size(c.before) : 0, stat ? (file != null ? file.length() : size(c.after)) : 0);
+                    continue;
+                }
+                byte[] before = c.before == null ? new byte[0] : store.read(c.before, Blob.class).getContent();
+                byte[] after = c.after == null ? new byte[0]
+                    : file != null ? Utils.readContents(file) : store.read(c.after, Blob.class).getContent();
+                compare(c, before, after);
+            }
+            if (format == Format.STAT) {
+                printStat();
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private boolean isLarge(String SHA1) {
+        return SHA1 != null && store.isLarge(SHA1);
+    }
+
+    private long size(String SHA1) {
+        return SHA1 == null ? 0 : store.blobSize(SHA1);
+    }
+
+    /** Print the change C, from the content BEFORE to AFTER (empty where the file doesn't exist). */
+    private void compare(Tree.Change c, byte[] before, byte[] after) throws IOException {
+        if (MergeEngine.isBinary(before) || MergeEngine.isBinary(after)) {
+            binary(c, before.length, after.length);
+            return;
+        }
+        String a = c.before == null ? NULL_PATH : "a/" + c.path;
+        String b = c.after == null ? NULL_PATH : "b/" + c.path;
+        LineDiff.Lines x = new LineDiff.Lines(before);
+        LineDiff.Lines y = new LineDiff.Lines(after);
+        LineDiff.Interner interner = new LineDiff.Interner();
+        List<LineDiff.Edit> edits = LineDiff.diff(interner.intern(x), interner.intern(y));
+        if (format == Format.STAT) {
+            long deletions = 0;
+            long insertions = 0;
+            for (LineDiff.Edit e : edits) {
+                deletions += e.endA - e.beginA;
+                insertions += e.endB - e.beginB;
+            }
+            addStat(c.path, insertions, deletions, false);
+            return;
+        }
+        write("diff --git " + a + " " + b + "\n--- " + a + "\n+++ " + b + "\n");
+        for (LineDiff.Edit e : edits) {
+            write("@@ -" + range(e.beginA, e.endA) + " +" + range(e.beginB, e.endB) + " @@\n");
+            lines('-', x, e.beginA, e.endA);
+            lines('+', y, e.beginB, e.endB);
+        }
+    }
+
+    /** Print the change C of a binary file, whose content was BEFORESIZE and is AFTERSIZE bytes long. */
+    private void binary(Tree.Change c, long beforeSize, long afterSize) throws IOException {
+        String a = c.before == null ? NULL_PATH : "a/" + c.path;
+        String b = c.after == null ? NULL_PATH : "b/" + c.path;
+        if (format == Format.STAT) {
+            addStat(c.path, beforeSize, afterSize, true);
+        } else {
+            write("diff --git " + a + " " + b + "\nBinary files " + a + " and " + b + " differ\n");
+        }
+    }
+
+    /** A range of lines [begin..end) as in a hunk header: the first line (counted from 1) and the count, if it isn't 1.
+     * An empty range is given by the line before it. */
+    private static String range(int begin, int end) {
+        int count = end - begin;
+        if (count == 1) {
+            return String.valueOf(begin + 1);
+        }
+        return (count == 0 ? begin : begin + 1) + "," + count;
+    }
+
+    /** Print lines [from..to) of LINES, each after MARK. */
+    private void lines(char mark, LineDiff.Lines lines, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            out.write(mark);
+            out.write(lines.content, lines.start(i), lines.end(i) - lines.start(i));
+            if (i == lines.size() - 1 && !lines.endsWithNewline()) {
+                out.write(NO_NEWLINE);
+            }
+        }
+    }
+
+    private void addStat(String path, long first, long second, boolean binary) {
+        statPaths.add(path);
+        statCounts.add(new long[]{first, second});
+        statBinary.add(binary);
+    }
+
+    /** Print the rows of STAT, with the paths padded to the same width and the bars scaled to fit STAT_WIDTH, then the totals. */
+    private void printStat() throws IOException {
+        int pathWidth = 0;
+        long most = 0;
+        long insertions = 0;
+        long deletions = 0;
+        for (int i = 0; i < statPaths.size(); i++) {
+            pathWidth = Math.max(pathWidth, statPaths.get(i).length());
+            if (!statBinary.get(i)) {
+                long[] n = statCounts.get(i);
+                most = Math.max(most, n[0] + n[1]);
+                insertions += n[0];
+                deletions += n[1];
+            }
+        }
+        int countWidth = String.valueOf(most).length();
+        long barWidth = Math.max(10, STAT_WIDTH - pathWidth - countWidth - 5);
+        for (int i = 0; i < statPaths.size(); i++) {
+            long[] n = statCounts.get(i);
+            StringBuilder row = new StringBuilder(" ").append(pad(statPaths.get(i), pathWidth)).append(" | ");
+            if (statBinary.get(i)) {
+                row.append("Bin ").append(n[0]).append(" -> ").append(n[1]).append(" bytes");
+            } else {
+                row.append(pad(String.valueOf(n[0] + n[1]), -countWidth)).append(' ');
+                row.append("+".repeat((int) scale(n[0], most, barWidth))).append("-".repeat((int) scale(n[1], most, barWidth)));
+            }
+            write(row.toString().stripTrailing() + "\n");
+        }
+        if (!statPaths.isEmpty()) {
+            StringBuilder total = new StringBuilder(" ").append(statPaths.size()).append(statPaths.size() == 1 ? " file changed" : " files changed");
+            if (insertions > 0) {
+                total.append(", ").append(insertions).append(insertions == 1 ? " insertion(+)" : " insertions(+)");
+            }
+            if (deletions > 0) {
+                total.append(", ").append(deletions).append(deletions == 1 ? " deletion(-)" : " deletions(-)");
+            }
+            write(total.append("\n").toString());
+        }
+    }
+
+    /** N scaled down so that MOST fits WIDTH, but at least 1 if N isn't 0. */
+    private static long scale(long n, long most, long width) {
+        if (most <= width || n == 0) {
+            return n;
+        }
+        return Math.max(1, n * width / most);
+    }
+
+    /** S padded with spaces to WIDTH, on the right, or on the left if WIDTH is negative. */
+    private static String pad(String s, int width) {
+        return String.format("%" + (width < 0 ? "" : "-") + Math.max(1, Math.abs(width)) + "s", s);
+    }
+
+    private void write(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
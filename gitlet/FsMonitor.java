@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** An optional daemon ("gitlet fsmonitor") that watches the project folder and records which paths changed, so that Watcher can
+ * look at just those instead of listing and checking every file. Everything lives in .gitlet/fsmonitor:
+ * 1. lock: locked by the running daemon for as long as it runs, so others can tell whether it does.
+ * 2. journal: "GFSM", the version and the daemon's epoch (a random id) on the first line, then one line per change: a sequence number
+ *    and the changed path relative to the project folder. Once it holds JOURNAL_LIMIT lines (and twice as many as there are distinct paths),
+ *    it's compacted to the last change of each path.
+ * 3. cookies: files created by queries. The daemon deletes a cookie once it has seen it and recorded every change pending by then, whatever
+ *    folder it's in, which proves it has also recorded every change made before the cookie was created.
+ * A query hands in the token it got last time ("epoch:sequence number") and gets the paths changed since, with a new token. If there's no
+ * running daemon, it doesn't answer in time, or it started a new epoch since (after a restart, or after the file system reported lost events),
+ * the changes are unknown and the caller has to scan everything.
+ * Folders ignored by the .gitletignore file aren't watched at all. When that file changes, the daemon starts a new epoch with the new rules. */
+
+class FsMonitor {
+
+    static final String MAGIC = "GFSM";
+    static final int VERSION = 1;
+    /** How long a query waits for the daemon to see its cookie, in milliseconds. */
+    static final long SYNC_TIMEOUT = 2000;
+    /** Lines in the journal beyond which it's compacted. */
+    static final int JOURNAL_LIMIT = 10000;
+    /** Name of the cookie that stops the daemon. */
+    private static final String STOP = "stop";
+
+    /** The answer to a query: the paths changed since the given token, or null if they aren't known, and the token to hand in next time. */
+    static class Changes {
+        final String token;
+        final Set<String> paths;
+
+        Changes(String token, Set<String> paths) {
+            this.token = token;
+            this.paths = paths;
+        }
+    }
+
+    private final Path project;
+    private final File lockFile;
+    private final File journalFile;
+    private final File cookieFolder;
+
+    /** State of the daemon. */
+    private WatchService service;
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    private String epoch;
+    private long sequence;
+    private final Map<String, Long> latest = new HashMap<>(); // path -> sequence number of its last change
+    private int journalLines;
+    private BufferedWriter journal;
+    private IgnoreRules rules;
+
+    FsMonitor(Repository repo) {
+        project = repo.PROJECT_FOLDER.toPath();
+        lockFile = Utils.join(repo.FSMONITOR_FOLDER, "lock");
+        journalFile = Utils.join(repo.FSMONITOR_FOLDER, "journal");
+        cookieFolder = Utils.join(repo.FSMONITOR_FOLDER, "cookies");
+    }
+
+    /** Whether a daemon holds the lock. */
+    private boolean isRunning() {
+        if (!lockFile.isFile()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+             FileLock lock = ch.tryLock()) {
+            return lock == null;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Create a cookie named NAME and wait until the daemon deleted it. Returns false if it didn't within SYNC_TIMEOUT. */
+    private boolean sync(String name) {
+        File cookie = Utils.join(cookieFolder, name);
+        Utils.writeContents(cookie, "");
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+        while (cookie.exists()) {
+            if (System.currentTimeMillis() > deadline) {
+                cookie.delete();
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The paths changed since TOKEN (null if there's none), or null if there's no running daemon to ask. */
+    Changes changedSince(String token) {
+        if (!isRunning() || !sync("sync-" + UUID.randomUUID())) {
+            return null;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            return null;
+        }
+        String[] header = lines.isEmpty() ? new String[0] : lines.get(0).split(" ");
+        if (header.length != 3 || !header[0].equals(MAGIC) || !header[1].equals(String.valueOf(VERSION))) {
+            return null;
+        }
+        String current = header[2];
+        long since = -1;
+        if (token != null && token.startsWith(current + ":")) {
+            since = Long.parseLong(token.substring(current.length() + 1));
+        }
+        Set<String> paths = new HashSet<>();
+        long last = 0;
+        for (String line : lines.subList(1, lines.size())) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) { // cut short by a write in progress, it's after the cookie anyway
+                continue;
+            }
+            long n = Long.parseLong(line.substring(0, tab));
+            last = Math.max(last, n);
+            if (n > since) {
+                paths.add(line.substring(tab + 1));
+            }
+        }
+        return new Changes(current + ":" + last, since < 0 ? null : paths);
+    }
+
+    /** Stop the running daemon. */
+    void stop() {
+        if (!isRunning()) {
+            System.out.println("No filesystem monitor is running.");
+            System.exit(0);
+        }
+        sync(STOP);
+    }
+
+    /** Run the daemon until it's stopped. */
+    void run() {
+        cookieFolder.mkdirs();
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = ch.tryLock()) {
+            if (lock == null) {
+                System.out.println("A filesystem monitor is already running.");
+                System.exit(0);
+            }
+            service = FileSystems.getDefault().newWatchService();
+            folders.put(cookieFolder.toPath().register(service, ENTRY_CREATE), cookieFolder.toPath());
+            rules = IgnoreRules.load(project.toFile());
+            registerAll(project, null);
+            startEpoch();
+            while (true) {
+                List<Path> cookies = new ArrayList<>();
+                handle(service.take(), cookies);
+                if (!cookies.isEmpty()) {
+                    // a change made before a cookie was created may wait on a key queued behind the cookie's (re-queued by its reset
+                    // while the cookie was created): record every pending change before answering
+                    for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                        handle(key, cookies);
+                    }
+                }
+                journal.flush();
+                boolean stop = false;
+                for (Path cookie : cookies) {
+                    stop |= cookie.getFileName().toString().equals(STOP);
+                    Files.deleteIfExists(cookie);
+                }
+                if (stop) {
+                    break;
+                }
+            }
+            journal.close();
+            service.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Record the events of KEY, adding the cookies among them to COOKIES, and watch its folder again. */
+    private void handle(WatchKey key, List<Path> cookies) throws IOException {
+        Path folder = folders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) { // changes were lost, every client has to scan
+                startEpoch();
+            } else if (folder.equals(cookieFolder.toPath())) {
+                cookies.add(folder.resolve((Path) event.context()));
+            } else {
+                changed(folder.resolve((Path) event.context()), event.kind() == ENTRY_CREATE);
+            }
+        }
+        if (!key.reset()) {
+            folders.remove(key);
+        }
+    }
+
+    /** Watch FOLDER and all folders below it (but not .gitlet or ignored ones, which aren't looked into).
+     * Files found in them are recorded as changed if CHANGED isn't null. */
+    private void registerAll(Path folder, List<Path> changed) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (isInternal(dir) || !dir.equals(project) && rules.isIgnored(relative(dir), true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                folders.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (changed != null) {
+                    changed.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isInternal(Path p) {
+        Path relative = project.relativize(p);
+        return relative.getNameCount() > 0 && relative.getName(0).toString().equals(".gitlet");
+    }
+
+    /** PATH relative to the project folder, with "/" as separator. */
+    private String relative(Path path) {
+        return project.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /** Record that PATH changed. A new folder is watched from now on, and the files already in it are recorded too. */
+    private void changed(Path path, boolean created) throws IOException {
+        if (isInternal(path)) {
+            return;
+        }
+        if (relative(path).equals(IgnoreRules.FILE_NAME)) { // folders may have to be watched that weren't, clients have to scan anyway
+            rules = IgnoreRules.load(project.toFile());
+            registerAll(project, null);
+            startEpoch();
+            return;
+        }
+        if (rules.excludes(relative(path), Files.isDirectory(path))) {
+            return;
+        }
+        List<Path> changed = new ArrayList<>();
+        changed.add(path);
+        if (created && Files.isDirectory(path)) {
+            registerAll(path, changed);
+        }
+        for (Path p : changed) {
+            String relative = relative(p);
+            sequence += 1;
+            latest.put(relative, sequence);
+            journal.write(sequence + "\t" + relative + "\n");
+            journalLines += 1;
+        }
+        if (journalLines >= Math.max(JOURNAL_LIMIT, 2 * latest.size())) {
+            rewriteJournal();
+        }
+    }
+
+    /** Start a new epoch, with a new journal: tokens handed out before aren't valid anymore. */
+    private void startEpoch() throws IOException {
+        epoch = UUID.randomUUID().toString().replace("-", "");
+        sequence = 0;
+        latest.clear();
+        rewriteJournal();
+    }
+
+    /** Rewrite the journal with only the last change of each path. It's written under a temporary name and renamed in place. */
+    private void rewriteJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        File temp = new File(journalFile.getPath() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            out.write(MAGIC + " " + VERSION + " " + epoch + "\n");
+            for (Map.Entry<String, Long> e : latest.entrySet()) {
+                out.write(e.getValue() + "\t" + e.getKey() + "\n");
+            }
+        }
+        Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        journalLines = latest.size();
+        journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A sorted table of object ids inside a (usually memory-mapped) buffer, shared by the pack index (see PackFile) and the
+ * loose object index (see LooseIndex). It's laid out as a 256-entry fan-out table followed by the sorted 20-byte ids.
+ * The fan-out table stores, for every first byte b, how many ids start with a byte <= b. It narrows a binary search to ids sharing the first byte. */
+
+class IdTable {
+
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Size of the fan-out table. */
+    static final int FANOUT_BYTES = 256 * 4;
+
+    private final ByteBuffer buf;
+    private final int start;
+    private final int count;
+
+    /** The table of COUNT ids whose fan-out table starts at START in BUF. */
+    IdTable(ByteBuffer buf, int start, int count) {
+        this.buf = buf;
+        this.start = start;
+        this.count = count;
+    }
+
+    /** Write the table of the given IDS (sorted, no duplicates) to OUT. */
+    static void write(DataOutputStream out, List<String> ids) throws IOException {
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        for (int b = 1; b < 256; b++) {
+            fanout[b] += fanout[b - 1];
+        }
+        for (int n : fanout) {
+            out.writeInt(n);
+        }
+        for (String id : ids) {
+            out.write(Utils.hexToBytes(id));
+        }
+    }
+
+    /** Number of bytes a table of COUNT ids takes. */
+    static int size(int count) {
+        return FANOUT_BYTES + count * ID_BYTES;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /** Binary search for the position of ID in the table, or -1 if absent. */
+    int find(String id) {
+        byte[] key = Utils.hexToBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** All ids in the table, in ascending order. */
+    List<String> ids() {
+        List<String> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            res.add(idAt(i));
+        }
+        return res;
+    }
+
+    /** All ids in the table that start with PREFIX (at least two hex digits), in ascending order, but no more than LIMIT of them. */
+    List<String> idsWithPrefix(String prefix, int limit) {
+        List<String> res = new ArrayList<>();
+        int first = Integer.parseInt(prefix.substring(0, 2), 16);
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first);
+        // lower bound of the prefix among ids sharing its first byte
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count && res.size() < limit; i++) {
+            String id = idAt(i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            res.add(id);
+        }
+        return res;
+    }
+
+    private int fanout(int b) {
+        return buf.getInt(start + b * 4);
+    }
+
+    private int compareAt(int pos, byte[] key) {
+        int base = start + FANOUT_BYTES + pos * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i++) {
+            int cmp = Integer.compare(buf.get(base + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    String idAt(int pos) {
+        byte[] id = new byte[ID_BYTES];
+        buf.get(start + FANOUT_BYTES + pos * ID_BYTES, id);
+        return Utils.bytesToHex(id);
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** The patterns of the .gitletignore file in the project folder: untracked files and folders matching them are left out of status
+ * and "add .", and ignored folders aren't even looked into. One pattern per line, as in Git:
+ * 1. Blank lines and lines starting with "#" are skipped, "\" escapes a leading "#" or "!".
+ * 2. "*" matches anything but "/", "?" any one character but "/", "[abc]" and "[a-z]" one of the given characters ("[!abc]" one not given),
+ *    and "**" any number of folders: "logs/**" matches everything in logs, and "**" followed by "/build" any build folder.
+ * 3. A pattern ending with "/" only matches folders.
+ * 4. A pattern with a "/" elsewhere is matched against the whole path from the project folder (a leading "/" just anchors it there),
+ *    any other pattern against the name at any depth.
+ * 5. A pattern starting with "!" re-includes what an earlier pattern excluded, the last matching pattern decides.
+ *    As in Git, nothing under an ignored folder can be re-included.
+ * Patterns are compiled to regular expressions once, and plain names are compared as strings. Paths are relative to the project folder,
+ * with "/" as separator. */
+
+class IgnoreRules {
+
+    static final String FILE_NAME = ".gitletignore";
+
+    private static class Rule {
+        boolean negated;
+        boolean foldersOnly;
+        boolean anchored;
+        /** The pattern if it has no wildcards, null otherwise. */
+        String literal;
+        Pattern pattern;
+
+        boolean matches(String path, String name, boolean folder) {
+            if (foldersOnly && !folder) {
+                return false;
+            }
+            String target = anchored ? path : name;
+            return literal != null ? literal.equals(target) : pattern.matcher(target).matches();
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /** The rules of the .gitletignore file in PROJECTFOLDER, none if there isn't one. */
+    static IgnoreRules load(File projectFolder) {
+        IgnoreRules res = new IgnoreRules();
+        File f = Utils.join(projectFolder, FILE_NAME);
+        if (f.isFile()) {
+            for (String line : Utils.readContentsAsString(f).split("\r?\n")) {
+                res.add(line);
+            }
+        }
+        return res;
+    }
+
+    /** Whether there are no rules at all. */
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    private void add(String line) {
+        String pattern = line.stripTrailing();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        Rule rule = new Rule();
+        if (pattern.startsWith("!")) {
+            rule.negated = true;
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.endsWith("/")) {
+            rule.foldersOnly = true;
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        rule.anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        if (pattern.chars().noneMatch(c -> "*?[\\".indexOf(c) >= 0)) {
+            rule.literal = pattern;
+        } else {
+            rule.pattern = Pattern.compile(toRegex(pattern));
+        }
+        rules.add(rule);
+    }
+
+    /** The regular expression matching the same paths as the glob PATTERN. */
+    private static String toRegex(String pattern) {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                    i += 1;
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '/') {
+                        i += 1;
+                        res.append("(?:.*/)?"); // "**/": any number of folders, even none
+                    } else {
+                        res.append(".*");
+                    }
+                } else {
+                    res.append("[^/]*");
+                }
+            } else if (c == '?') {
+                res.append("[^/]");
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                int end = pattern.indexOf(']', i + 2);
+                String set = pattern.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                res.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < pattern.length()) {
+                i += 1;
+                res.append(Pattern.quote(String.valueOf(pattern.charAt(i))));
+            } else {
+                res.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return res.toString();
+    }
+
+    /** Whether the file (or folder, if FOLDER) at PATH is ignored by the rules themselves, assuming the folders it's in aren't. */
+    boolean isIgnored(String path, boolean folder) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.matches(path, name, folder)) {
+                return !rule.negated;
+            }
+        }
+        return false;
+    }
+
+    /** Whether the file (or folder, if FOLDER) at PATH is ignored, either itself or because one of the folders it's in is. */
+    boolean excludes(String path, boolean folder) {
+        if (rules.isEmpty()) {
+            return false;
+        }
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (isIgnored(path.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return isIgnored(path, folder);
+    }
+}
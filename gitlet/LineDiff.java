@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line-by-line differences between two contents, with Myers' O(ND) algorithm in its linear-space form: each step finds the
+ * "middle snake" of the shortest edit script by searching from both ends at once, then recurses on both sides of it, so memory stays
+ * proportional to the number of lines. Lines are compared as small integers:
+ * 1. Lines splits a content into lines in one pass over its bytes, keeping only where each line starts (no copies, no Strings).
+ *    A line includes its "\n"; the last line may lack one.
+ * 2. Interner gives equal lines the same id, across all contents interned with the same Interner, through a hash table of its own.
+ * 3. diff compares the ids, after skipping the lines the two contents have in common at both ends. */
+
+class LineDiff {
+
+    /** The lines of a content: line I is content[starts[I]..starts[I + 1]). */
+    static class Lines {
+        final byte[] content;
+        private final int[] starts;
+
+        Lines(byte[] content) {
+            this.content = content;
+            int n = 0;
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] == '\n') {
+                    n += 1;
+                }
+            }
+            if (content.length > 0 && content[content.length - 1] != '\n') {
+                n += 1;
+            }
+            starts = new int[n + 1];
+            int line = 1;
+            for (int i = 0; i < content.length && line < n; i++) {
+                if (content[i] == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            starts[n] = content.length;
+        }
+
+        int size() {
+            return starts.length - 1;
+        }
+
+        int start(int line) {
+            return starts[line];
+        }
+
+        int end(int line) {
+            return starts[line + 1];
+        }
+
+        /** Whether the last line ends with "\n", true if there are no lines. */
+        boolean endsWithNewline() {
+            return content.length == 0 || content[content.length - 1] == '\n';
+        }
+    }
+
+    /** Gives every distinct line an id, the same for equal lines of any content it's given. */
+    static class Interner {
+        /** The line of each id, as its content and bounds. */
+        private byte[][] owners = new byte[64][];
+        private int[] froms = new int[64];
+        private int[] tos = new int[64];
+        private int[] hashes = new int[64];
+        private int count;
+        /** Open-addressing table of id + 1 (0 for an empty slot), its size a power of 2 at least twice count. */
+        private int[] table = new int[128];
+
+        /** The ids of the lines of LINES, in order. */
+        int[] intern(Lines lines) {
+            int[] res = new int[lines.size()];
+            for (int i = 0; i < res.length; i++) {
+                res[i] = intern(lines.content, lines.start(i), lines.end(i));
+            }
+            return res;
+        }
+
+        private int intern(byte[] content, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + content[i];
+            }
+            int mask = table.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int id = table[slot] - 1;
+                if (id < 0) {
+                    break;
+                }
+                if (hashes[id] == hash && Arrays.equals(owners[id], froms[id], tos[id], content, from, to)) {
+                    return id;
+                }
+            }
+            if (count == owners.length) {
+                owners = Arrays.copyOf(owners, count * 2);
+                froms = Arrays.copyOf(froms, count * 2);
+                tos = Arrays.copyOf(tos, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            owners[count] = content;
+            froms[count] = from;
+            tos[count] = to;
+            hashes[count] = hash;
+            count += 1;
+            if (count * 2 > table.length) {
+                rehash(table.length * 2);
+            } else {
+                insert(count - 1);
+            }
+            return count - 1;
+        }
+
+        private void rehash(int size) {
+            table = new int[size];
+            for (int id = 0; id < count; id++) {
+                insert(id);
+            }
+        }
+
+        private void insert(int id) {
+            int mask = table.length - 1;
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /** A region where the two sides differ: lines [beginA, endA) of A were replaced by lines [beginB, endB) of B.
+     * Either region may be empty, for an insertion or a deletion. */
+    static class Edit {
+        final int beginA;
+        final int endA;
+        final int beginB;
+        final int endB;
+
+        Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+    }
+
+    /** The edits turning the lines A into the lines B (as ids, see Interner), in order, with no two of them adjacent.
+     * Equal sequences are told apart right away, without any search. */
+    static List<Edit> diff(int[] a, int[] b) {
+        List<Edit> res = new ArrayList<>();
+        if (Arrays.equals(a, b)) {
+            return res;
+        }
+        int max = (a.length + b.length + 1) / 2 + 1;
+        new LineDiff(a, b, max).diff(0, a.length, 0, b.length, res);
+        List<Edit> merged = new ArrayList<>(res.size());
+        for (Edit e : res) {
+            Edit last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last.endA == e.beginA && last.endB == e.beginB) {
+                merged.set(merged.size() - 1, new Edit(last.beginA, e.endA, last.beginB, e.endB));
+            } else {
+                merged.add(e);
+            }
+        }
+        return merged;
+    }
+
+    private final int[] a;
+    private final int[] b;
+    /** Furthest x reached on each diagonal k (at index k + offset), searching forward and backward. Shared by all steps. */
+    private final int[] forward;
+    private final int[] backward;
+    private final int offset;
+    /** The middle snake found last: from (snakeX, snakeY) to (snakeU, snakeV), relative to the bounds searched. */
+    private int snakeX;
+    private int snakeY;
+    private int snakeU;
+    private int snakeV;
+
+    private LineDiff(int[] a, int[] b, int max) {
+        this.a = a;
+        this.b = b;
+        offset = max;
+        forward = new int[2 * max + 2];
+        backward = new int[2 * max + 2];
+    }
+
+    /** Add the edits turning a[aLo..aHi) into b[bLo..bHi) to RES, in order. */
+    private void diff(int aLo, int aHi, int bLo, int bHi, List<Edit> res) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                res.add(new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        // Both ends differ, so there are at least 2 edits, and each side of the middle snake has fewer than the whole
+        middleSnake(aLo, aHi, bLo, bHi);
+        int x = snakeX;
+        int y = snakeY;
+        int u = snakeU;
+        int v = snakeV;
+        diff(aLo, aLo + x, bLo, bLo + y, res);
+        diff(aLo + u, aHi, bLo + v, bHi, res);
+    }
+
+    /** Find the middle snake of the shortest edit script of a[aLo..aHi) and b[bLo..bHi), see Myers, section 4b. */
+    private void middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1 && x + backward[offset + kb] >= n) {
+                    setSnake(x0, y0, x, y);
+                    return;
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                    ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + forward[offset + kf] >= n) {
+                    setSnake(n - x, m - y, n - x0, m - y0);
+                    return;
+                }
+            }
+        }
+        throw Utils.error("No middle snake between lines %d-%d and %d-%d", aLo, aHi, bLo, bHi);
+    }
+
+    private void setSnake(int x, int y, int u, int v) {
+        snakeX = x;
+        snakeY = y;
+        snakeU = u;
+        snakeV = v;
+    }
+}
@@ -0,0 +1,41 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/** A lock on files that several threads and processes (e.g. "gitlet serve" and a command) change at once, like the indexes they append to.
+ * A change is made while holding both LOCK, for the threads of this JVM, and a FileChannel lock on the lock file, for other processes.
+ * That lock is taken on a file of its own because the locks of a process on a file are all released as soon as any channel to it is
+ * closed, e.g. one a reader opened on the file being changed. */
+
+class LockFile {
+
+    /** A change of the locked files. */
+    interface Change {
+        void run() throws IOException;
+    }
+
+    /** Held while making any change, FileChannel locks can't keep out the other threads of the same JVM. */
+    private static final Object LOCK = new Object();
+
+    private final File file;
+
+    LockFile(File file) {
+        this.file = file;
+    }
+
+    /** Make CHANGE while holding the locks. Changes may not be nested. */
+    void locked(Change change) {
+        file.getParentFile().mkdirs();
+        synchronized (LOCK) {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                ch.lock(); // released when the channel is closed
+                change.run();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
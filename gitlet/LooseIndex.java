@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The ids of all loose objects of a repository, so they can be listed and looked up by prefix without listing the fan-out folders.
+ * It's kept in two files under .gitlet/objects/info:
+ * 1. loose.idx: "GLIX", version, count, then the table of sorted ids (see IdTable). It's memory-mapped and binary searched.
+ * 2. loose.log: the 20-byte ids of objects written since loose.idx was, in the order they were written.
+ * Once the log holds LOG_LIMIT ids they are merged into a new loose.idx, so the part that is scanned linearly stays small.
+ *
+ * Objects may be written from several threads, through several stores of the same repository (e.g. those of Commit and Watcher),
+ * and by several processes (e.g. "gitlet serve" and a command) at once. So the files are only changed while holding the lock on loose.lock
+ * (see LockFile): appending to the log, and merging it into a new loose.idx, which is renamed in place before the log is emptied. Readers take no lock. Before each lookup they check
+ * whether loose.idx was replaced, and read what was appended to the log since they last looked, so they see the ids of every writer. */
+
+class LooseIndex {
+
+    static final byte[] MAGIC = "GLIX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    /** Ids in the log beyond which it's merged into the sorted index. */
+    static final int LOG_LIMIT = 1024;
+
+    private static final int HEADER = 12;
+
+    private final File indexFile;
+    private final File logFile;
+    private final LockFile lock;
+    /** The sorted ids and the logged ones, loaded on first use. */
+    private IdTable table;
+    private List<String> log;
+    /** Identity and modification time of the loose.idx the table was loaded from, and how many bytes of the log were read. */
+    private Object loadedIndex;
+    private long logRead;
+
+    LooseIndex(File infoFolder) {
+        indexFile = Utils.join(infoFolder, "loose.idx");
+        logFile = Utils.join(infoFolder, "loose.log");
+        lock = new LockFile(Utils.join(infoFolder, "loose.lock"));
+    }
+
+    /** Whether the index has been written, it has to be built by a scan of the loose objects otherwise. */
+    synchronized boolean exists() {
+        return indexFile.isFile();
+    }
+
+    /** Bring the table and the log up to date with the files, which another index may have changed. */
+    private void load() {
+        try {
+            while (true) {
+                Object current = stamp();
+                if (table == null || !current.equals(loadedIndex)) {
+                    loadIndex(current);
+                }
+                readLog();
+                if (stamp().equals(current)) { // else merged meanwhile, and what was read may belong to the old loose.idx
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read the ids appended to the log since it was last read. */
+    private void readLog() throws IOException {
+        long length = logFile.length();
+        if (length < logRead) { // emptied by a merge
+            table = null;
+            return;
+        }
+        length -= length % IdTable.ID_BYTES; // an id cut short by an interrupted append, or being appended, is left for later
+        if (length == logRead) {
+            return;
+        }
+        ByteBuffer logged = ByteBuffer.allocate((int) (length - logRead));
+        try (FileChannel ch = FileChannel.open(logFile.toPath())) {
+            while (logged.hasRemaining() && ch.read(logged, logRead + logged.position()) >= 0) {
+                continue;
+            }
+        }
+        byte[] id = new byte[IdTable.ID_BYTES];
+        for (logged.flip(); logged.remaining() >= id.length; ) {
+            logged.get(id);
+            log.add(Utils.bytesToHex(id));
+        }
+        logRead = length;
+    }
+
+    /** What tells the current loose.idx apart from the ones it replaced. */
+    private Object stamp() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(indexFile.toPath(), BasicFileAttributes.class);
+        return List.of(String.valueOf(attrs.fileKey()), attrs.lastModifiedTime(), attrs.size());
+    }
+
+    private void loadIndex(Object stamp) throws IOException {
+        try (FileChannel ch = FileChannel.open(indexFile.toPath())) {
+            MappedByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            byte[] magic = new byte[MAGIC.length];
+            index.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC) || index.getInt(4) != VERSION) {
+                throw Utils.error("Corrupted loose object index %s", indexFile.getName());
+            }
+            table = new IdTable(index, HEADER, index.getInt(8));
+        }
+        loadedIndex = stamp;
+        log = new ArrayList<>();
+        logRead = 0;
+    }
+
+    /** Record the loose object ID, which has just been written. */
+    void add(String id) {
+        lock.locked(() -> {
+            Files.write(logFile.toPath(), Utils.hexToBytes(id), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (logFile.length() >= (long) LOG_LIMIT * IdTable.ID_BYTES) {
+                write(ids(), true);
+            }
+        });
+    }
+
+    /** All ids, in ascending order. */
+    synchronized List<String> ids() {
+        load();
+        TreeSet<String> res = new TreeSet<>(table.ids());
+        res.addAll(log);
+        return new ArrayList<>(res);
+    }
+
+    /** All ids that start with PREFIX (at least two hex digits), in ascending order, but no more than LIMIT of them. */
+    synchronized List<String> idsWithPrefix(String prefix, int limit) {
+        load();
+        TreeSet<String> res = new TreeSet<>(table.idsWithPrefix(prefix, limit));
+        for (String id : log) {
+            if (id.startsWith(prefix)) {
+                res.add(id);
+            }
+        }
+        List<String> sorted = new ArrayList<>(res);
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /** Replace the index with one holding exactly IDS (sorted, no duplicates), and empty the log. */
+    void rewrite(List<String> ids) {
+        lock.locked(() -> write(ids, true));
+    }
+
+    /** Write the first index, of the ids SCANNED from the fan-out folders, unless another index did meanwhile.
+     * The log is kept, it may already hold ids written after the scan. */
+    void create(List<String> scanned) {
+        lock.locked(() -> {
+            if (!indexFile.isFile()) {
+                write(scanned, false);
+            }
+        });
+    }
+
+    /** Write the index of IDS under a temporary name and rename it in place, then empty the log if CLEARLOG. Needs the locks. */
+    private synchronized void write(List<String> ids, boolean clearLog) throws IOException {
+        Path temp = Files.createTempFile(indexFile.getParentFile().toPath(), indexFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                IdTable.write(out, ids);
+            }
+            Files.move(temp, indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.toFile().delete();
+            throw excp;
+        }
+        if (clearLog) {
+            Files.write(logFile.toPath(), new byte[0]);
+        }
+        table = null;
+    }
+}
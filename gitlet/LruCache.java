@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A map holding at most CAPACITY entries, evicting the least recently used one when it's full.
+ * It counts hits and misses of get, so callers can tell how well it works. All methods are synchronized. */
+
+class LruCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+
+    LruCache(int capacity) {
+        this.capacity = capacity;
+        // access order: every get moves the entry to the end, so the eldest entry is the least recently used
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.capacity;
+            }
+        };
+    }
+
+    /** Return the value cached under KEY, or null if there's none. */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
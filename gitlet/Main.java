@@ -1,6 +1,12 @@
 package gitlet;
 
 import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -93,21 +99,46 @@ public class Main {
                 }
                 break;
             case "global-log":
-                if (args.length != 1) {
-                    System.out.println("Wrong number of arguments.");
-                    System.exit(0);
+                // global-log [--by-time] [--since date] [--until date]
+                boolean byTime = false;
+                long since = Long.MIN_VALUE;
+                long until = Long.MAX_VALUE;
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--by-time")) {
+                        byTime = true;
+                    } else if (args[i].equals("--since") && i + 1 < args.length) {
+                        since = parseDate(args[++i], false);
+                    } else if (args[i].equals("--until") && i + 1 < args.length) {
+                        until = parseDate(args[++i], true);
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        System.exit(0);
+                    }
                 }
-                new Commit().logGlobal();
+                Commit.getHeadCommit(); // make sure we are in an initialized Gitlet directory
+                new Commit().logGlobal(byTime, since, until);
                 break;
             case "find":
-                if (args.length == 1 || (args.length == 2 && args[1].isEmpty())) {
+                Commit.getHeadCommit(); // make sure we are in an initialized Gitlet directory
+                if (args.length == 2 && args[1].equals("--reindex")) {
+                    new Commit().reindex();
+                    break;
+                }
+                // find [message], find --contains [text], find --words [words]
+                boolean option = args.length > 1 && (args[1].equals("--contains") || args[1].equals("--words"));
+                int expected = option ? 3 : 2;
+                if (args.length < expected || args[expected - 1].isEmpty()) {
                     System.out.println("Please enter a commit message.");
                     System.exit(0);
-                } else if (args.length > 2) {
+                } else if (args.length > expected) {
                     System.out.println("Wrong number of arguments.");
                     System.exit(0);
-                } else {
+                } else if (!option) {
                     new Commit().find(args[1]);
+                } else if (args[1].equals("--contains")) {
+                    new Commit().findContaining(args[2]);
+                } else {
+                    new Commit().findWords(args[2]);
                 }
                 break;
             case "checkout":
@@ -177,6 +208,68 @@ public class Main {
                     new Commit().merge(args[1]);
                 }
                 break;
+            case "diff":
+                // diff [--stat | --name-only] [--cached | [revision] [revision]]
+                Diff.Format format = Diff.Format.PATCH;
+                boolean cached = false;
+                List<String> revisions = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--stat")) {
+                        format = Diff.Format.STAT;
+                    } else if (args[i].equals("--name-only")) {
+                        format = Diff.Format.NAME_ONLY;
+                    } else if (args[i].equals("--cached")) {
+                        cached = true;
+                    } else if (!args[i].startsWith("-")) {
+                        revisions.add(args[i]);
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        System.exit(0);
+                    }
+                }
+                if (revisions.size() > 2 || (cached && !revisions.isEmpty())) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                Commit.getHeadCommit(); // make sure we are in an initialized Gitlet directory
+                new Diff(format, new ObjectStore(new Repository())).run(cached, revisions);
+                break;
+            case "repack":
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("-a"))) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                Commit.getHeadCommit(); // make sure we are in an initialized Gitlet directory
+                new ObjectStore(new Repository()).repack(args.length == 2);
+                break;
+            case "fsmonitor":
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("--stop"))) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                Commit.getHeadCommit(); // make sure we are in an initialized Gitlet directory
+                if (args.length == 2) {
+                    new FsMonitor(new Repository()).stop();
+                } else {
+                    new FsMonitor(new Repository()).run();
+                }
+                break;
+            case "serve":
+                // serve [--host address] [--port number], serving the repositories in the current folder
+                String host = "localhost";
+                int port = Transport.DEFAULT_PORT;
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--host") && i + 1 < args.length) {
+                        host = args[++i];
+                    } else if (args[i].equals("--port") && i + 1 < args.length && args[i + 1].matches("\\d{1,5}")) {
+                        port = Integer.parseInt(args[++i]);
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        System.exit(0);
+                    }
+                }
+                new Daemon(new Repository().PROJECT_FOLDER).run(host, port);
+                break;
             case "tinytest": // For testing purposes. write a Blob object to a file named "tinytest", and see whether it can be read back correctly.
                 Utils.writeObject(Utils.join(new Repository().PROJECT_FOLDER, "tinytest"),new Blob());
                 byte[] content = Utils.readContents(Utils.join(new Repository().PROJECT_FOLDER, "tinytest"));
@@ -223,4 +316,25 @@ public class Main {
         }
     }
 
+    /** Parse DATE, either "yyyy-MM-dd" or "yyyy-MM-dd HH:mm:ss" in the local time zone, into seconds since the epoch.
+     * A bare date stands for the start of that day, or for its end if ENDOFDAY. Aborts on anything else. */
+    private static long parseDate(String date, boolean endOfDay) {
+        try {
+            LocalDateTime time;
+            if (date.length() == 10) {
+                time = LocalDate.parse(date).atStartOfDay();
+                if (endOfDay) {
+                    time = time.plusDays(1).minusSeconds(1);
+                }
+            } else {
+                time = LocalDateTime.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            }
+            return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+            return 0;
+        }
+    }
+
 }
@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Works out the result of a three-way merge from the Trees of the split point, the current commit and the given commit alone,
+ * without looking at the working directory or the index. Only files changed since the split point on either side are looked at,
+ * as Tree.diff skips every folder that is the same on both sides.
+ * For each such file, with S, C and T its blob at the split point, in the current and in the given commit (null where it doesn't exist):
+ * 1. C equals T: nothing to do.
+ * 2. Only T differs from S: the file takes T, or is removed if T is null.
+ * 3. Only C differs from S: the file keeps C.
+ * 4. Both differ from S, and differently: the three versions are merged line by line, as diff3 does. The lines of S are matched with those
+ *    of C and of T (see LineDiff), and each region where C or T changed S is taken from the side that changed it. Regions changed by
+ *    both sides (or next to each other) are taken once if both made the same change, and are a conflict otherwise: both versions
+ *    are written between conflict markers. A file removed on one side, or binary on any, is a conflict as a whole.
+ *    A file too large to be read into memory on any side (see ObjectStore.isLarge) is never read: it's a conflict as a whole, and keeps
+ *    C, or takes T if C is null, as Git leaves conflicting binary files.
+ * The result is only applied by the caller, in one batch (see Commit.merge). */
+
+class MergeEngine {
+
+    static final byte[] HEADER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] SPLITTER = "=======\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] FOOTER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+    /** Number of leading bytes looked at to tell binary contents. */
+    static final int BINARY_CHECK = 8000;
+
+    /** What a merge changes relative to the current commit. */
+    static class Result {
+        /** Path -> the blob SHA1 the file takes, or null if it's removed. Ordered by path. A large file in conflict may keep its blob. */
+        final Map<String, String> changes = new TreeMap<>();
+        /** Path -> the content of the files merged line by line, whose SHA1 is in changes too. Their blobs aren't stored yet. */
+        final Map<String, byte[]> contents = new TreeMap<>();
+        /** Paths of the merged files left with conflicts. */
+        final Set<String> conflicts = new TreeSet<>();
+    }
+
+    private final ObjectStore store;
+
+    MergeEngine(ObjectStore store) {
+        this.store = store;
+    }
+
+    /** Merge the tree THEIRS into OURS, given BASE, the tree of their split point. */
+    Result merge(String base, String ours, String theirs) {
+        Map<String, Tree.Change> ourChanges = new HashMap<>();
+        Map<String, Tree.Change> theirChanges = new HashMap<>();
+        for (Tree.Change c : Tree.diff(store, base, ours)) {
+            ourChanges.put(c.path, c);
+        }
+        for (Tree.Change c : Tree.diff(store, base, theirs)) {
+            theirChanges.put(c.path, c);
+        }
+        TreeSet<String> paths = new TreeSet<>(ourChanges.keySet());
+        paths.addAll(theirChanges.keySet());
+        Result res = new Result();
+        for (String path : paths) {
+            Tree.Change c = ourChanges.get(path);
+            Tree.Change t = theirChanges.get(path);
+            String s = c != null ? c.before : t.before;
+            mergeFile(path, s, c != null ? c.after : s, t != null ? t.after : s, res);
+        }
+        return res;
+    }
+
+    /** Merge the file at PATH, given the SHA1s of its blob at the split point (S), in ours (C) and in theirs (T), into RES. */
+    private void mergeFile(String path, String s, String c, String t, Result res) {
+        if (Objects.equals(c, t)) {
+            return;
+        }
+        if (Objects.equals(c, s)) {
+            res.changes.put(path, t);
+        } else if (!Objects.equals(t, s)) {
+            if (isLarge(s) || isLarge(c) || isLarge(t)) {
+                res.changes.put(path, c != null ? c : t); // staged even if unchanged, so the merge commit records the conflict
+                res.conflicts.add(path);
+                return;
+            }
+            byte[] base = content(s);
+            byte[] ours = content(c);
+            byte[] theirs = content(t);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            boolean conflict;
+            if (c == null || t == null || isBinary(base) || isBinary(ours) || isBinary(theirs)) {
+                LineDiff.Lines o = new LineDiff.Lines(ours);
+                LineDiff.Lines th = new LineDiff.Lines(theirs);
+                conflict(o, 0, o.size(), th, 0, th.size(), content);
+                conflict = true;
+            } else {
+                conflict = merge(new LineDiff.Lines(base), new LineDiff.Lines(ours), new LineDiff.Lines(theirs), content);
+            }
+            byte[] merged = content.toByteArray();
+            res.changes.put(path, Utils.bytesToHex(Utils.sha1Digest().digest(merged)));
+            res.contents.put(path, merged);
+            if (conflict) {
+                res.conflicts.add(path);
+            }
+        }
+    }
+
+    /** Merge the lines OURS and THEIRS, both derived from BASE, into OUT. Returns whether there are conflicts. */
+    static boolean merge(LineDiff.Lines base, LineDiff.Lines ours, LineDiff.Lines theirs, ByteArrayOutputStream out) {
+        LineDiff.Interner interner = new LineDiff.Interner();
+        int[] b = interner.intern(base);
+        int[] o = interner.intern(ours);
+        int[] t = interner.intern(theirs);
+        List<LineDiff.Edit> ourEdits = LineDiff.diff(b, o);
+        List<LineDiff.Edit> theirEdits = LineDiff.diff(b, t);
+        boolean conflict = false;
+        int i = 0;
+        int j = 0;
+        int done = 0; // lines of BASE output or replaced so far
+        while (i < ourEdits.size() || j < theirEdits.size()) {
+            // A region starts with the first edit of either side, and takes in every edit of both sides that overlaps or touches it
+            int lo = Math.min(i < ourEdits.size() ? ourEdits.get(i).beginA : Integer.MAX_VALUE,
+                j < theirEdits.size() ? theirEdits.get(j).beginA : Integer.MAX_VALUE);
+            int hi = lo;
+            int i0 = i;
+            int j0 = j;
+            while (true) {
+                if (i < ourEdits.size() && ourEdits.get(i).beginA <= hi) {
+                    hi = Math.max(hi, ourEdits.get(i++).endA);
+                } else if (j < theirEdits.size() && theirEdits.get(j).beginA <= hi) {
+                    hi = Math.max(hi, theirEdits.get(j++).endA);
+                } else {
+                    break;
+                }
+            }
+            copy(base, done, lo, out);
+            done = hi;
+            int oLo = start(ourEdits, i0, i, lo);
+            int oHi = end(ourEdits, i0, i, hi);
+            int tLo = start(theirEdits, j0, j, lo);
+            int tHi = end(theirEdits, j0, j, hi);
+            if (i == i0) { // only theirs changed this region
+                copy(theirs, tLo, tHi, out);
+            } else if (j == j0 || Arrays.equals(o, oLo, oHi, t, tLo, tHi)) { // only ours, or both the same way
+                copy(ours, oLo, oHi, out);
+            } else {
+                conflict(ours, oLo, oHi, theirs, tLo, tHi, out);
+                conflict = true;
+            }
+        }
+        copy(base, done, base.size(), out);
+        return conflict;
+    }
+
+    /** Where region LO of the base starts on a side whose edits in the region are EDITS[from..to) (none if from == to). */
+    private static int start(List<LineDiff.Edit> edits, int from, int to, int lo) {
+        if (from == to) {
+            return lo;
+        }
+        LineDiff.Edit first = edits.get(from);
+        return first.beginB - (first.beginA - lo);
+    }
+
+    /** Where region ending at HI of the base ends on a side, see start. */
+    private static int end(List<LineDiff.Edit> edits, int from, int to, int hi) {
+        if (from == to) {
+            return hi;
+        }
+        LineDiff.Edit last = edits.get(to - 1);
+        return last.endB + (hi - last.endA);
+    }
+
+    /** Write lines [from..to) of LINES to OUT. */
+    private static void copy(LineDiff.Lines lines, int from, int to, ByteArrayOutputStream out) {
+        if (from < to) {
+            out.write(lines.content, lines.start(from), lines.end(to - 1) - lines.start(from));
+        }
+    }
+
+    /** Write lines [oLo..oHi) of OURS and [tLo..tHi) of THEIRS between conflict markers to OUT.
+     * A last line without "\n" gets one, so the markers stay on lines of their own. */
+    private static void conflict(LineDiff.Lines ours, int oLo, int oHi, LineDiff.Lines theirs, int tLo, int tHi,
+                                 ByteArrayOutputStream out) {
+        out.writeBytes(HEADER);
+        copyLine(ours, oLo, oHi, out);
+        out.writeBytes(SPLITTER);
+        copyLine(theirs, tLo, tHi, out);
+        out.writeBytes(FOOTER);
+    }
+
+    private static void copyLine(LineDiff.Lines lines, int from, int to, ByteArrayOutputStream out) {
+        copy(lines, from, to, out);
+        if (from < to && to == lines.size() && !lines.endsWithNewline()) {
+            out.write('\n');
+        }
+    }
+
+    /** Whether CONTENT looks binary: it has a NUL byte among its first BINARY_CHECK bytes, as Git checks. */
+    static boolean isBinary(byte[] content) {
+        for (int i = 0; i < Math.min(content.length, BINARY_CHECK); i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isLarge(String SHA1) {
+        return SHA1 != null && store.isLarge(SHA1);
+    }
+
+    private byte[] content(String SHA1) {
+        return SHA1 == null ? new byte[0] : store.read(SHA1, Blob.class).getContent();
+    }
+}
@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** An inverted index from log messages to the commits that have them, so find never has to read the commits themselves.
+ * Commits are looked up by their whole message, by a substring of it, or by words (see tokens) their message contains.
+ *
+ * It's saved in .gitlet/message-index: "GMSG", version, then one record per commit in the order they were added:
+ * the 20-byte id, the length of the message in bytes and the message in UTF-8. New commits are appended by commit, merge and fetch,
+ * without reading the rest. If the file is missing it's rebuilt from all commits in the object store, which can also be asked for
+ * with "find --reindex".
+ * The file is only changed while holding the lock on message-index.lock (see LockFile), as "gitlet serve" may append to it too. Each record
+ * is appended in one write, and cut off again if that fails. A record cut short all the same (by a crash) is cut off by the next load,
+ * so the records appended after it are still read. */
+
+class MessageIndex {
+
+    static final byte[] MAGIC = "GMSG".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    private final File file;
+    private final LockFile lock;
+    private final ObjectStore store;
+
+    /** The index in memory, loaded on first use. */
+    private Set<String> Ids;
+    private Map<String, Set<String>> ByMessage;
+    private Map<String, Set<String>> ByToken;
+
+    MessageIndex(Repository repo, ObjectStore store) {
+        this.file = repo.MESSAGE_INDEX;
+        this.lock = new LockFile(new File(file.getPath() + ".lock"));
+        this.store = store;
+    }
+
+    /** The lower-cased words of MESSAGE: maximal runs of letters and digits. */
+    static List<String> tokens(String message) {
+        List<String> res = new ArrayList<>();
+        for (String token : message.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                res.add(token);
+            }
+        }
+        return res;
+    }
+
+    private void load() {
+        if (Ids != null) {
+            return;
+        }
+        if (!file.isFile()) {
+            rebuild();
+            return;
+        }
+        Ids = new HashSet<>();
+        ByMessage = new HashMap<>();
+        ByToken = new HashMap<>();
+        byte[] content = Utils.readContents(file);
+        ByteBuffer buf = ByteBuffer.wrap(content);
+        byte[] magic = new byte[MAGIC.length];
+        if (buf.remaining() >= HEADER) {
+            buf.get(magic);
+        }
+        if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION) {
+            rebuild();
+            return;
+        }
+        byte[] id = new byte[ID_BYTES];
+        int end = buf.position();
+        while (buf.remaining() >= ID_BYTES + 4) {
+            buf.get(id);
+            int length = buf.getInt();
+            if (length < 0 || buf.remaining() < length) {
+                break;
+            }
+            byte[] message = new byte[length];
+            buf.get(message);
+            put(Utils.bytesToHex(id), new String(message, StandardCharsets.UTF_8));
+            end = buf.position();
+        }
+        if (end < content.length) { // a record cut short, or one being appended
+            cutOff(content.length, end);
+        }
+    }
+
+    /** Cut the file back to END, where a record cut short starts, unless it isn't LENGTH bytes long anymore: the record was then
+     * being appended when the file was read, which the lock waits for. */
+    private void cutOff(long length, long end) {
+        lock.locked(() -> {
+            if (file.length() == length) {
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(end);
+                }
+            }
+        });
+    }
+
+    private void put(String id, String message) {
+        Ids.add(id);
+        ByMessage.computeIfAbsent(message, k -> new TreeSet<>()).add(id);
+        for (String token : tokens(message)) {
+            ByToken.computeIfAbsent(token, k -> new TreeSet<>()).add(id);
+        }
+    }
+
+    /** Index the commit with the given SHA1 and log MESSAGE, which has just been made, so the index isn't read to look for it.
+     * Should it be indexed already all the same, the record is only there twice. */
+    void add(String SHA1, String message) {
+        if (!file.isFile()) { // rebuilt from the object store, which holds the commit already
+            load();
+            return;
+        }
+        byte[] record = record(SHA1, message);
+        lock.locked(() -> {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long end = ch.size();
+                try {
+                    ByteBuffer buf = ByteBuffer.wrap(record);
+                    while (buf.hasRemaining()) {
+                        ch.write(buf);
+                    }
+                } catch (IOException excp) {
+                    ch.truncate(end);
+                    throw excp;
+                }
+            }
+        });
+        if (Ids != null) {
+            put(SHA1, message);
+        }
+    }
+
+    /** Index the commit with the given SHA1 and log MESSAGE, unless it's indexed already, as a commit received from another
+     * repository may be. */
+    void addIfMissing(String SHA1, String message) {
+        load();
+        if (!Ids.contains(SHA1)) {
+            add(SHA1, message);
+        }
+    }
+
+    private static byte[] record(String SHA1, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer res = ByteBuffer.allocate(ID_BYTES + 4 + bytes.length);
+        res.put(Utils.hexToBytes(SHA1));
+        res.putInt(bytes.length);
+        res.put(bytes);
+        return res.array();
+    }
+
+    /** Index all commits of the object store from scratch, replacing the saved index.
+     * The new index is written under a temporary name and renamed in place, holding the lock. */
+    void rebuild() {
+        Ids = new HashSet<>();
+        ByMessage = new HashMap<>();
+        ByToken = new HashMap<>();
+        File temp = new File(file.getPath() + ".tmp");
+        lock.locked(() -> {
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                    out.write(MAGIC);
+                    out.writeInt(VERSION);
+                    for (String SHA1 : store.ids(ObjectCodec.COMMIT)) {
+                        String message = store.read(SHA1, Commit.class).logMessage;
+                        out.write(record(SHA1, message));
+                        put(SHA1, message);
+                    }
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete(); // only left if it wasn't moved
+            }
+        });
+    }
+
+    /** Ids of the commits whose message is exactly MESSAGE, in ascending order. */
+    Set<String> find(String message) {
+        load();
+        return new TreeSet<>(ByMessage.getOrDefault(message, Set.of()));
+    }
+
+    /** Ids of the commits whose message contains TEXT, in ascending order. Only the distinct messages are searched. */
+    Set<String> findContaining(String text) {
+        load();
+        Set<String> res = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> e : ByMessage.entrySet()) {
+            if (e.getKey().contains(text)) {
+                res.addAll(e.getValue());
+            }
+        }
+        return res;
+    }
+
+    /** Ids of the commits whose message contains all the words of WORDS (see tokens), in ascending order. */
+    Set<String> findWords(String words) {
+        load();
+        Set<String> res = null;
+        for (String token : tokens(words)) {
+            Set<String> ids = ByToken.getOrDefault(token, Set.of());
+            if (res == null) {
+                res = new TreeSet<>(ids);
+            } else {
+                res.retainAll(ids);
+            }
+        }
+        return res == null ? new TreeSet<>() : res;
+    }
+}
@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Hand-written binary encoding of the objects kept in the object store, replacing Java serialization.
+ * Every encoding starts with a one-byte type tag and a one-byte format version, followed by:
+ * 1. Commit (COMMIT): parent count, each parent as 20 raw bytes, commit time as epoch seconds (8 bytes), log message,
+ *    then the 20-byte id of its root Tree (version 2, TREE_VERSION).
+ *    Commits from before trees (version 1) have an entry count instead, then each entry's path and 20-byte blob id, sorted by path.
+ * 2. Blob (BLOB): the raw file content, up to the end.
+ * 3. Delta (DELTA): the 20-byte base id, chain depth, then the instructions up to the end.
+ * 4. ChunkedBlob (CHUNKED): total size (8 bytes), chunk count, each chunk as 20 raw bytes.
+ * 5. Tree (TREE): file count, each file's name and 20-byte blob id, then subdirectory count, each subdirectory's name and
+ *    20-byte tree id, both sorted by name.
+ * Counts and lengths are var-ints (see Delta.writeVarInt), strings are a length followed by UTF-8 bytes.
+ * The encodings of commits and trees are canonical, their ids are the SHA1 of them. A blob's id stays the SHA1 of the file content.
+ *
+ * Objects written before this encoding are Java-serialized; their bytes start with 0xAC (serialization magic) and are decoded the old way. */
+
+class ObjectCodec {
+
+    static final byte COMMIT = 'C';
+    static final byte BLOB = 'B';
+    static final byte DELTA = 'D';
+    static final byte CHUNKED = 'K';
+    static final byte TREE = 'T';
+    static final byte VERSION = 1;
+    /** Format version of commits pointing to a root Tree. */
+    static final byte TREE_VERSION = 2;
+
+    /** First byte of every Java-serialized object. */
+    private static final byte JAVA_SERIALIZED = (byte) 0xAC;
+
+    /** Return the type tag of an encoded object from the first bytes of its encoding PREFIX, or 0 if they aren't enough to tell.
+     * For a Java-serialized object the type follows from the class name at the start of the stream. */
+    static byte typeOf(byte[] prefix) {
+        if (prefix.length == 0) {
+            return 0;
+        }
+        if (prefix[0] != JAVA_SERIALIZED) {
+            return prefix[0];
+        }
+        // magic (2 bytes), version (2), TC_OBJECT, TC_CLASSDESC, class name length (2), class name
+        if (prefix.length < 8) {
+            return 0;
+        }
+        int length = ((prefix[6] & 0xff) << 8) | (prefix[7] & 0xff);
+        if (prefix.length < 8 + length) {
+            return 0;
+        }
+        String className = new String(prefix, 8, length, StandardCharsets.UTF_8);
+        switch (className) {
+            case "gitlet.Commit":
+                return COMMIT;
+            case "gitlet.Blob":
+                return BLOB;
+            case "gitlet.Delta":
+                return DELTA;
+            case "gitlet.ChunkedBlob":
+                return CHUNKED;
+            case "gitlet.Tree":
+                return TREE;
+            default:
+                throw new IllegalArgumentException("unknown object class " + className);
+        }
+    }
+
+    /** Return the encoding of OBJ, which must be a Commit, Blob, Delta, ChunkedBlob or Tree.
+     * A commit without a root Tree (a legacy one) keeps the version 1 encoding. */
+    static byte[] encode(Serializable obj) {
+        if (obj instanceof Blob) {
+            byte[] content = ((Blob) obj).getContent();
+            ByteArrayOutputStream res = new ByteArrayOutputStream(content.length + 2);
+            res.write(BLOB);
+            res.write(VERSION);
+            res.writeBytes(content);
+            return res.toByteArray();
+        }
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        if (obj instanceof Commit) {
+            Commit c = (Commit) obj;
+            res.write(COMMIT);
+            res.write(c.RootTree != null ? TREE_VERSION : VERSION);
+            Delta.writeVarInt(res, c.Parent.size());
+            for (String parent : c.Parent) {
+                res.writeBytes(Utils.hexToBytes(parent));
+            }
+            writeLong(res, c.timeStamp);
+            writeString(res, c.logMessage);
+            if (c.RootTree != null) {
+                res.writeBytes(Utils.hexToBytes(c.RootTree));
+            } else {
+                TreeMap<String, String> entries = new TreeMap<>();
+                for (Map.Entry<File, String> e : c.Blobs.entrySet()) {
+                    entries.put(e.getKey().getPath(), e.getValue());
+                }
+                writeEntries(res, entries);
+            }
+        } else if (obj instanceof Delta) {
+            Delta d = (Delta) obj;
+            res.write(DELTA);
+            res.write(VERSION);
+            res.writeBytes(Utils.hexToBytes(d.getBase()));
+            Delta.writeVarInt(res, d.getDepth());
+            res.writeBytes(d.getInstructions());
+        } else if (obj instanceof ChunkedBlob) {
+            ChunkedBlob k = (ChunkedBlob) obj;
+            res.write(CHUNKED);
+            res.write(VERSION);
+            writeLong(res, k.getSize());
+            Delta.writeVarInt(res, k.getChunks().size());
+            for (String chunk : k.getChunks()) {
+                res.writeBytes(Utils.hexToBytes(chunk));
+            }
+        } else if (obj instanceof Tree) {
+            Tree t = (Tree) obj;
+            res.write(TREE);
+            res.write(VERSION);
+            writeEntries(res, t.getBlobs());
+            writeEntries(res, t.getTrees());
+        } else {
+            throw Utils.error("Cannot encode %s", obj.getClass().getName());
+        }
+        return res.toByteArray();
+    }
+
+    /** Return the object encoded in CONTENT, either by encode or by Java serialization. */
+    static Serializable decode(byte[] content) {
+        if (content.length > 0 && content[0] == JAVA_SERIALIZED) {
+            return Utils.deserialize(content, Serializable.class);
+        }
+        if (content.length < 2 || (content[1] != VERSION && !(content[0] == COMMIT && content[1] == TREE_VERSION))) {
+            throw new IllegalArgumentException("unknown object format");
+        }
+        int[] pos = {2};
+        switch (content[0]) {
+            case BLOB:
+                byte[] blob = new byte[content.length - 2];
+                System.arraycopy(content, 2, blob, 0, blob.length);
+                return new Blob(blob);
+            case COMMIT:
+                Commit c = new Commit(null, 0);
+                int parents = Delta.readVarInt(content, pos);
+                for (int i = 0; i < parents; i++) {
+                    c.Parent.add(readId(content, pos));
+                }
+                c.timeStamp = readLong(content, pos);
+                c.logMessage = readString(content, pos);
+                if (content[1] == TREE_VERSION) {
+                    c.RootTree = readId(content, pos);
+                    return c;
+                }
+                c.RootTree = null;
+                int entries = Delta.readVarInt(content, pos);
+                c.Blobs = new HashMap<>(Math.max(16, entries * 2));
+                for (int i = 0; i < entries; i++) {
+                    String path = readString(content, pos);
+                    c.Blobs.put(new File(path), readId(content, pos));
+                }
+                return c;
+            case DELTA:
+                String base = readId(content, pos);
+                int depth = Delta.readVarInt(content, pos);
+                byte[] instructions = new byte[content.length - pos[0]];
+                System.arraycopy(content, pos[0], instructions, 0, instructions.length);
+                return new Delta(base, depth, instructions);
+            case CHUNKED:
+                long size = readLong(content, pos);
+                int count = Delta.readVarInt(content, pos);
+                List<String> chunks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    chunks.add(readId(content, pos));
+                }
+                return new ChunkedBlob(chunks, size);
+            case TREE:
+                TreeMap<String, String> blobs = readEntries(content, pos);
+                return new Tree(blobs, readEntries(content, pos));
+            default:
+                throw new IllegalArgumentException("unknown object type " + content[0]);
+        }
+    }
+
+    /** Write the count of ENTRIES, then each name and 20-byte id, in the map's order. */
+    private static void writeEntries(ByteArrayOutputStream out, Map<String, String> entries) {
+        Delta.writeVarInt(out, entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            writeString(out, e.getKey());
+            out.writeBytes(Utils.hexToBytes(e.getValue()));
+        }
+    }
+
+    private static TreeMap<String, String> readEntries(byte[] content, int[] pos) {
+        TreeMap<String, String> res = new TreeMap<>();
+        int count = Delta.readVarInt(content, pos);
+        for (int i = 0; i < count; i++) {
+            String name = readString(content, pos);
+            res.put(name, readId(content, pos));
+        }
+        return res;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long n) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (n >>> shift));
+        }
+    }
+
+    private static long readLong(byte[] content, int[] pos) {
+        long n = 0;
+        for (int i = 0; i < 8; i++) {
+            n = (n << 8) | (content[pos[0]++] & 0xff);
+        }
+        return n;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        Delta.writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(byte[] content, int[] pos) {
+        int length = Delta.readVarInt(content, pos);
+        String s = new String(content, pos[0], length, StandardCharsets.UTF_8);
+        pos[0] += length;
+        return s;
+    }
+
+    private static String readId(byte[] content, int[] pos) {
+        byte[] id = new byte[Utils.UID_LENGTH / 2];
+        System.arraycopy(content, pos[0], id, 0, id.length);
+        pos[0] += id.length;
+        return Utils.bytesToHex(id);
+    }
+}
@@ -0,0 +1,647 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** The single entry point for reading and writing Commit, Tree and Blob objects of a repository.
+ * An object is either "loose", stored in its own file .gitlet/objects/xx/yyyy... where xxyyyy... is its SHA1,
+ * or "packed", stored inside one of the packs under .gitlet/objects/pack (see PackFile).
+ * Callers only deal with SHA1s, and never need to know where an object actually lives.
+ * The ids of loose objects are also kept in a sorted index (see LooseIndex), so listing objects and resolving abbreviated ids
+ * are binary searches over it and over the packs' indexes, never scans of the fan-out folders.
+ *
+ * Objects are stored compressed behind a typed header: TYPED, the type tag of the object (see ObjectCodec), the length of its encoding
+ * as a var-int, then the deflated encoding. The type and length can be read from the first few bytes without inflating anything,
+ * so scans over all objects (see ids(byte)) never load a blob. Objects written before the header have the older COMPRESSED header
+ * (no type or length), or hold the bare Java-serialized object, which starts with the Java serialization magic 0xACED instead.
+ * All kinds can be told apart by their first bytes and are loaded alike; repack rewrites older objects with the typed header.
+ *
+ * Files larger than STREAM_THRESHOLD are never held in memory as a whole. They are cut into content-defined chunks (see Chunker),
+ * each stored as a Blob of its own, and the file's SHA1 names a ChunkedBlob listing them. Unchanged regions of a new version reuse the
+ * chunks already stored. Earlier versions stored such files "streamed" instead: the header STREAMED followed by the deflated raw content.
+ * Streamed blobs can still be read, always stay loose, and are never written anymore.
+ *
+ * Objects can be read, looked up and written from several threads at once (e.g. by the workers of Parallel), but repack must run alone. */
+
+public class ObjectStore {
+
+    /** Header of a compressed object: "GLZ" and the format version. */
+    static final byte[] COMPRESSED = {'G', 'L', 'Z', 1};
+    /** Header of a compressed object with its type and length: "GLZ" and the format version. */
+    static final byte[] TYPED = {'G', 'L', 'Z', 2};
+    /** Header of a streamed blob: "GLS" and the format version. */
+    static final byte[] STREAMED = {'G', 'L', 'S', 1};
+    /** Files larger than this many bytes are stored as chunks, never held in memory as a whole. */
+    static final long STREAM_THRESHOLD = 16L * 1024 * 1024;
+    /** How many stored bytes are read to find out the type of an object. Enough for any typed header, and almost always for older objects. */
+    private static final int HEADER_PEEK = 512;
+    /** How many decoded commits and trees a store keeps in memory. */
+    static final int COMMIT_CACHE_SIZE = 4096;
+
+    /** What the first bytes of a stored object tell about it. */
+    static class Header {
+        /** One of the type tags of ObjectCodec. */
+        final byte type;
+        /** Length of the encoded object, or -1 for objects stored before the typed header. */
+        final long size;
+
+        Header(byte type, long size) {
+            this.type = type;
+            this.size = size;
+        }
+    }
+
+    private final Repository repo;
+    /** Packs of this repository, loaded on first use. */
+    private List<PackFile> packs;
+    /** Ids of the loose objects, loaded on first use. */
+    private LooseIndex looseIndex;
+    /** Recently read commits and trees by SHA1. They are never changed once stored, so the same object can be handed out again. */
+    private final LruCache<String, Serializable> commits = new LruCache<>(COMMIT_CACHE_SIZE);
+
+    public ObjectStore(Repository repo) {
+        this.repo = repo;
+    }
+
+    /** The cache of decoded commits and trees, e.g. to look at its hit and miss counts. */
+    LruCache<String, Serializable> getCommitCache() {
+        return commits;
+    }
+
+    /** The loose file of the given full SHA1 (which may not exist). */
+    private File looseFile(String SHA1) {
+        return Utils.join(repo.OBJECT_FOLDER, SHA1.substring(0, 2), SHA1.substring(2));
+    }
+
+    /** The index of loose objects, built by a scan of the fan-out folders if the repository doesn't have one yet. */
+    private synchronized LooseIndex looseIndex() {
+        if (looseIndex == null) {
+            looseIndex = new LooseIndex(repo.INFO_FOLDER);
+            if (!looseIndex.exists()) {
+                looseIndex.create(scanLooseIds());
+            }
+        }
+        return looseIndex;
+    }
+
+    private synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            File[] files = repo.PACK_FOLDER.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.getName().endsWith(".idx")) {
+                        packs.add(new PackFile(f));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Return the stored form of the encoded object CONTENT (see ObjectCodec). */
+    static byte[] encode(byte[] content) {
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        res.writeBytes(TYPED);
+        res.write(ObjectCodec.typeOf(content));
+        Delta.writeVarInt(res, content.length);
+        res.writeBytes(Utils.compress(content));
+        return res.toByteArray();
+    }
+
+    /** Return the encoded object held in STORED, whichever header it has. */
+    static byte[] decode(byte[] stored) {
+        if (hasHeader(stored, TYPED)) {
+            int[] pos = {TYPED.length + 1};
+            Delta.readVarInt(stored, pos);
+            return Utils.decompress(stored, pos[0]);
+        } else if (hasHeader(stored, COMPRESSED)) {
+            return Utils.decompress(stored, COMPRESSED.length);
+        }
+        return stored;
+    }
+
+    private static boolean hasHeader(byte[] stored, byte[] header) {
+        return stored.length >= header.length
+            && Arrays.equals(stored, 0, header.length, header, 0, header.length);
+    }
+
+    /** Whether the object with the given full SHA1 is a streamed blob, judging from its first bytes only. */
+    public boolean isStreamed(String SHA1) {
+        File loose = looseFile(SHA1);
+        if (!loose.isFile()) {
+            return false;
+        }
+        byte[] header = new byte[STREAMED.length];
+        try (InputStream in = Files.newInputStream(loose.toPath())) {
+            return in.readNBytes(header, 0, header.length) == header.length && Arrays.equals(header, STREAMED);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Whether the blob with the given full SHA1 is too large to be held in memory: it's chunked, streamed, or longer than
+     * STREAM_THRESHOLD. Callers that would read it whole, like merge and diff, treat it as binary and only compare its SHA1. */
+    public boolean isLarge(String SHA1) {
+        if (isStreamed(SHA1)) {
+            return true;
+        }
+        Header h = header(SHA1);
+        return h.type == ObjectCodec.CHUNKED || h.size > STREAM_THRESHOLD;
+    }
+
+    /** Return the first (at most) LIMIT stored bytes of the object with the given full SHA1, or null if there's no such object. */
+    private byte[] readPrefix(String SHA1, int limit) {
+        File loose = looseFile(SHA1);
+        if (loose.isFile()) {
+            try (InputStream in = Files.newInputStream(loose.toPath())) {
+                return in.readNBytes(limit);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (PackFile p : packs()) {
+            byte[] content = p.read(SHA1, limit);
+            if (content != null) {
+                return content;
+            }
+        }
+        return null;
+    }
+
+    /** Return the header of the object with the given full SHA1, reading only its first bytes.
+     * Objects stored before the typed header have their first bytes inflated instead, and only if that isn't enough is the whole object read.
+     * Throws IllegalArgumentException if there's no such object. */
+    public Header header(String SHA1) {
+        byte[] prefix = readPrefix(SHA1, HEADER_PEEK);
+        if (prefix == null) {
+            throw new IllegalArgumentException("No object " + SHA1);
+        }
+        if (hasHeader(prefix, TYPED)) {
+            int[] pos = {TYPED.length + 1};
+            return new Header(prefix[TYPED.length], Delta.readVarInt(prefix, pos));
+        } else if (hasHeader(prefix, STREAMED)) {
+            return new Header(ObjectCodec.BLOB, -1);
+        }
+        byte type = 0;
+        if (hasHeader(prefix, COMPRESSED)) {
+            Inflater inflater = new Inflater();
+            inflater.setInput(prefix, COMPRESSED.length, prefix.length - COMPRESSED.length);
+            byte[] start = new byte[HEADER_PEEK];
+            try {
+                type = ObjectCodec.typeOf(Arrays.copyOf(start, inflater.inflate(start)));
+            } catch (DataFormatException excp) {
+                type = 0;
+            } finally {
+                inflater.end();
+            }
+        } else {
+            type = ObjectCodec.typeOf(prefix);
+        }
+        if (type == 0) {
+            type = ObjectCodec.typeOf(decode(readRaw(SHA1)));
+        }
+        return new Header(type, -1);
+    }
+
+    /** Full SHA1s of all objects of the given TYPE (one of the type tags of ObjectCodec), in ascending order. Only headers are read. */
+    public List<String> ids(byte type) {
+        List<String> res = new ArrayList<>();
+        for (String SHA1 : ids()) {
+            if (header(SHA1).type == type) {
+                res.add(SHA1);
+            }
+        }
+        return res;
+    }
+
+    /** Whether an object with the given full SHA1 exists, loose or packed. */
+    public boolean contains(String SHA1) {
+        if (looseFile(SHA1).exists()) {
+            return true;
+        }
+        for (PackFile p : packs()) {
+            if (p.contains(SHA1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the stored bytes of the object with the given full SHA1, or null if there's no such object. */
+    public byte[] readRaw(String SHA1) {
+        File loose = looseFile(SHA1);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (PackFile p : packs()) {
+            byte[] content = p.read(SHA1);
+            if (content != null) {
+                return content;
+            }
+        }
+        return null;
+    }
+
+    /** Open the stored bytes of the object with the given full SHA1, as readRaw returns them. A loose object is read from its file
+     * as the stream is read, so even a streamed blob is never held in memory. Throws IllegalArgumentException if there's no such object. */
+    public InputStream openRaw(String SHA1) {
+        File loose = looseFile(SHA1);
+        try {
+            if (loose.isFile()) {
+                return Files.newInputStream(loose.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] content = readRaw(SHA1);
+        if (content == null) {
+            throw new IllegalArgumentException("No object " + SHA1);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    /** Store the object with the given SHA1 as a loose object from its stored bytes STORED (as another store's openRaw gives them),
+     * unless an object with that SHA1 is already stored. The bytes are copied as they are read into a file of their own, and only show up
+     * under the object's name once they are all there, so the same object may be written by several threads at once.
+     * They may come from another repository, or over the network, so they must also hold the object the SHA1 names (see matches):
+     * otherwise nothing is stored, and a GitletException is thrown. */
+    public void writeRaw(String SHA1, InputStream stored) {
+        if (contains(SHA1)) {
+            return;
+        }
+        writeLoose(SHA1, stored, true);
+    }
+
+    /** Copy STORED into a new file and rename it to the loose file of SHA1, so that file only ever appears complete.
+     * If VERIFY, the copy must match SHA1 first. */
+    private void writeLoose(String SHA1, InputStream stored, boolean verify) {
+        File loose = looseFile(SHA1);
+        loose.getParentFile().mkdirs();
+        Path temp = null;
+        boolean moved = false;
+        try {
+            temp = Files.createTempFile(loose.getParentFile().toPath(), loose.getName(), ".tmp");
+            Files.copy(stored, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (verify && !matches(SHA1, temp)) {
+                throw Utils.error("Object %s is corrupt.", SHA1);
+            }
+            Files.move(temp, loose.toPath(), StandardCopyOption.ATOMIC_MOVE); // without it, a file being replaced is deleted first
+            moved = true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null && !moved) {
+                temp.toFile().delete();
+            }
+        }
+        looseIndex().add(SHA1);
+    }
+
+    /** Whether the stored bytes in the file STORED hold the object whose SHA1 is the given one, going by how each type is named:
+     * 1. Commits and trees by the SHA1 of their encoding. A legacy commit, which has no root tree, by that of its Java serialization.
+     * 2. Blobs by the SHA1 of their content, which for a Delta is rebuilt from its base, and for a ChunkedBlob is read chunk by chunk,
+     *    so neither is held in memory as a whole. Both need the objects they refer to stored already, and small.
+     * A streamed blob is inflated as it's hashed. */
+    private boolean matches(String SHA1, Path stored) throws IOException {
+        byte[] header = new byte[STREAMED.length];
+        try (InputStream in = Files.newInputStream(stored)) {
+            if (in.readNBytes(header, 0, header.length) == header.length && Arrays.equals(header, STREAMED)) {
+                MessageDigest md = Utils.sha1Digest();
+                try (InputStream content = new DigestInputStream(new InflaterInputStream(in, new Inflater(), Utils.BUFFER_SIZE), md)) {
+                    content.transferTo(OutputStream.nullOutputStream());
+                }
+                return SHA1.equals(Utils.bytesToHex(md.digest()));
+            }
+        }
+        Serializable obj;
+        byte[] encoding;
+        try {
+            encoding = decode(Files.readAllBytes(stored));
+            obj = ObjectCodec.decode(encoding);
+        } catch (RuntimeException excp) { // malformed bytes may fail anywhere in decoding
+            return false;
+        }
+        if (obj instanceof Commit) {
+            return SHA1.equals(hash(encoding))
+                || (((Commit) obj).RootTree == null && SHA1.equals(hash(Utils.serialize(obj))));
+        } else if (obj instanceof Tree) {
+            return SHA1.equals(hash(encoding));
+        } else if (obj instanceof Blob) {
+            return SHA1.equals(hash(((Blob) obj).getContent()));
+        } else if (obj instanceof Delta) {
+            Delta delta = (Delta) obj;
+            if (!contains(delta.getBase()) || isLarge(delta.getBase())) {
+                return false;
+            }
+            try {
+                return SHA1.equals(hash(delta.apply(read(delta.getBase(), Blob.class).getContent())));
+            } catch (RuntimeException excp) { // instructions that don't fit the base
+                return false;
+            }
+        } else if (obj instanceof ChunkedBlob) {
+            ChunkedBlob chunked = (ChunkedBlob) obj;
+            MessageDigest md = Utils.sha1Digest();
+            long size = 0;
+            for (String chunk : chunked.getChunks()) {
+                if (!contains(chunk) || isLarge(chunk)) {
+                    return false;
+                }
+                byte[] content = read(chunk, Blob.class).getContent();
+                md.update(content);
+                size += content.length;
+            }
+            return size == chunked.getSize() && SHA1.equals(Utils.bytesToHex(md.digest()));
+        }
+        return false;
+    }
+
+    private static String hash(byte[] bytes) {
+        return Utils.bytesToHex(Utils.sha1Digest().digest(bytes));
+    }
+
+    /** Return the object with the given full SHA1 exactly as stored, which for a blob may be a Delta. */
+    private Serializable load(String SHA1) {
+        byte[] content = readRaw(SHA1);
+        if (content == null) {
+            throw new IllegalArgumentException("No object " + SHA1);
+        }
+        if (hasHeader(content, STREAMED)) {
+            return new Blob(Utils.decompress(content, STREAMED.length));
+        }
+        Serializable obj = ObjectCodec.decode(decode(content));
+        if (obj instanceof Commit) {
+            ((Commit) obj).id = SHA1;
+        }
+        return obj;
+    }
+
+    /** Return the object with the given full SHA1, casting it to EXPECTEDCLASS.
+     * A blob stored as a Delta is rebuilt from its chain of bases when a Blob is expected.
+     * Commits and trees are served from the commit cache when possible, the returned object must not be modified.
+     * Throws IllegalArgumentException if there's no such object. */
+    public <T extends Serializable> T read(String SHA1, Class<T> expectedClass) {
+        Serializable obj = expectedClass == Blob.class ? null : commits.get(SHA1);
+        if (obj == null) {
+            obj = load(SHA1);
+            if (obj instanceof Commit || obj instanceof Tree) {
+                commits.put(SHA1, obj);
+            }
+        }
+        if (expectedClass == Blob.class) {
+            obj = toBlob(obj);
+        }
+        try {
+            return expectedClass.cast(obj);
+        } catch (ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Turn a stored blob OBJ, whatever its form, into a Blob holding its whole content. */
+    private Serializable toBlob(Serializable obj) {
+        if (obj instanceof Delta) {
+            return applyDelta((Delta) obj);
+        } else if (obj instanceof ChunkedBlob) {
+            return joinChunks((ChunkedBlob) obj);
+        }
+        return obj;
+    }
+
+    /** Assemble the whole content of CHUNKED in memory. Only for callers that need it as a byte[], see copyBlobTo otherwise. */
+    private Blob joinChunks(ChunkedBlob chunked) {
+        ByteArrayOutputStream res = new ByteArrayOutputStream((int) Math.min(chunked.getSize(), Integer.MAX_VALUE - 8));
+        for (String chunk : chunked.getChunks()) {
+            res.writeBytes(read(chunk, Blob.class).getContent());
+        }
+        return new Blob(res.toByteArray());
+    }
+
+    /** Rebuild the blob that DELTA stands for. The recursion is bounded by Delta.MAX_DEPTH. */
+    private Blob applyDelta(Delta delta) {
+        Blob base = read(delta.getBase(), Blob.class);
+        return new Blob(delta.apply(base.getContent()));
+    }
+
+    /** Store OBJ as a loose object under the given SHA1, unless an object with that SHA1 is already stored.
+     * Like writeRaw, the same object may be written by several threads at once, e.g. two files with the same content by "add .". */
+    public void write(String SHA1, Serializable obj) {
+        if (contains(SHA1)) {
+            return;
+        }
+        writeLoose(SHA1, new ByteArrayInputStream(encode(ObjectCodec.encode(obj))), false);
+    }
+
+    /** Store CONTENT as the blob with the given SHA1, unless it is already stored.
+     * If BASESHA1 (typically the previously committed version of the same file, may be null) is stored and
+     * not yet at the end of a maximal delta chain, the blob is stored as a Delta against it when that saves at least half the space. */
+    public void writeBlob(String SHA1, byte[] content, String baseSHA1) {
+        if (contains(SHA1)) {
+            return;
+        }
+        Serializable obj = null;
+        if (baseSHA1 != null && content.length >= Delta.MIN_SIZE && contains(baseSHA1) && !isStreamed(baseSHA1)) {
+            Serializable base = load(baseSHA1);
+            if (base instanceof Delta && ((Delta) base).getDepth() < Delta.MAX_DEPTH) {
+                obj = Delta.compute(baseSHA1, ((Delta) base).getDepth(), applyDelta((Delta) base).getContent(), content);
+            } else if (base instanceof Blob) {
+                obj = Delta.compute(baseSHA1, 0, ((Blob) base).getContent(), content);
+            }
+        }
+        write(SHA1, obj != null ? obj : new Blob(content));
+    }
+
+    /** Store the content of SOURCE as a ChunkedBlob, hashing it on the way, and return its SHA1.
+     * SOURCE is read once, and never more than Chunker.MAX_SIZE bytes of it are held in memory. Only chunks not stored yet are written. */
+    public String writeBlobStream(File source) {
+        MessageDigest md = Utils.sha1Digest();
+        List<String> chunks = new ArrayList<>();
+        long size = 0;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source.toPath()), md)) {
+            Chunker chunker = new Chunker(in);
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                String chunkSHA1 = Utils.sha1((Object) chunk);
+                write(chunkSHA1, new Blob(chunk));
+                chunks.add(chunkSHA1);
+                size += chunk.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String SHA1 = Utils.bytesToHex(md.digest());
+        write(SHA1, new ChunkedBlob(chunks, size));
+        return SHA1;
+    }
+
+    /** Write the content of the blob with the given full SHA1 to TARGET, creating or overwriting it as needed.
+     * A ChunkedBlob is written out chunk by chunk, and a streamed blob is inflated straight into TARGET through a fixed-size buffer. */
+    public void copyBlobTo(String SHA1, File target) {
+        if (isStreamed(SHA1)) {
+            try (InputStream in = openStreamed(SHA1)) {
+                Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+        Serializable obj = load(SHA1);
+        if (!(obj instanceof ChunkedBlob)) {
+            Utils.writeContents(target, (Object) Blob.class.cast(toBlob(obj)).getContent());
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(target.toPath())) {
+            for (String chunk : ((ChunkedBlob) obj).getChunks()) {
+                out.write(read(chunk, Blob.class).getContent());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The content of the streamed blob with the given full SHA1, inflated as it's read. */
+    private InputStream openStreamed(String SHA1) throws IOException {
+        InputStream in = Files.newInputStream(looseFile(SHA1).toPath());
+        in.skipNBytes(STREAMED.length);
+        return new InflaterInputStream(in, new Inflater(), Utils.BUFFER_SIZE);
+    }
+
+    /** The length of the content of the blob with the given full SHA1. A large blob (see isLarge) isn't held in memory to find out. */
+    public long blobSize(String SHA1) {
+        if (isStreamed(SHA1)) {
+            try (InputStream in = openStreamed(SHA1)) {
+                return in.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Serializable obj = load(SHA1);
+        if (obj instanceof ChunkedBlob) {
+            return ((ChunkedBlob) obj).getSize();
+        }
+        return ((Blob) toBlob(obj)).getContent().length;
+    }
+
+    /** Full SHA1s of all loose objects, in ascending order. */
+    private List<String> looseIds() {
+        return looseIndex().ids();
+    }
+
+    /** Full SHA1s of all loose objects, in ascending order, found by listing the fan-out folders. */
+    private List<String> scanLooseIds() {
+        List<String> res = new ArrayList<>();
+        File[] folders = repo.OBJECT_FOLDER.listFiles();
+        if (folders == null) {
+            return res;
+        }
+        for (File f : folders) {
+            if (!f.isDirectory() || f.getName().length() != 2) { // skip the pack folder
+                continue;
+            }
+            for (String fileName : Utils.plainFilenamesIn(f)) {
+                if (fileName.length() == Utils.UID_LENGTH - 2) { // skip what an interrupted writeRaw left behind
+                    res.add(f.getName() + fileName);
+                }
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    /** Full SHA1s of all objects, loose or packed, in ascending order. */
+    public List<String> ids() {
+        TreeSet<String> res = new TreeSet<>(looseIds());
+        for (PackFile p : packs()) {
+            res.addAll(p.ids());
+        }
+        return new ArrayList<>(res);
+    }
+
+    /** Full SHA1s of the stored objects whose SHA1 starts with PREFIX (at least two hex digits, may be a full SHA1), in ascending order.
+     * Only the indexes of loose and packed objects are searched. */
+    public List<String> idsWithPrefix(String prefix) {
+        if (prefix.length() < 2 || !prefix.chars().allMatch(c -> c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+            return new ArrayList<>();
+        }
+        if (prefix.length() >= Utils.UID_LENGTH) {
+            return contains(prefix) ? new ArrayList<>(List.of(prefix)) : new ArrayList<>();
+        }
+        TreeSet<String> res = new TreeSet<>(looseIndex().idsWithPrefix(prefix, Integer.MAX_VALUE));
+        for (PackFile p : packs()) {
+            res.addAll(p.idsWithPrefix(prefix, Integer.MAX_VALUE));
+        }
+        return new ArrayList<>(res);
+    }
+
+    /** Move objects into a pack and delete their loose copies. Returns the number of objects packed.
+     * If ALL is false, only loose objects are packed into one new pack, leaving existing packs untouched.
+     * If ALL is true, every object (loose or packed) is consolidated into a single pack, which replaces all existing ones. */
+    public int repack(boolean all) {
+        List<String> loose = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        for (String SHA1 : looseIds()) {
+            if (!looseFile(SHA1).isFile()) { // gone behind the index's back
+                continue;
+            }
+            if (isStreamed(SHA1)) { // streamed blobs are too large to go through a pack entry
+                kept.add(SHA1);
+            } else {
+                loose.add(SHA1);
+            }
+        }
+        List<PackFile> old = all ? new ArrayList<>(packs()) : new ArrayList<>();
+        List<String> ids = loose;
+        if (all) {
+            TreeSet<String> packed = new TreeSet<>(loose);
+            for (PackFile p : old) {
+                packed.addAll(p.ids());
+            }
+            ids = new ArrayList<>(packed);
+        }
+        if (ids.isEmpty() || (!all && loose.isEmpty()) || (all && loose.isEmpty() && old.size() == 1)) {
+            return 0;
+        }
+        // objects written before the typed header get it on their way into the pack
+        PackFile pack = PackFile.write(repo.PACK_FOLDER, ids, SHA1 -> {
+            byte[] stored = readRaw(SHA1);
+            return hasHeader(stored, TYPED) ? stored : encode(decode(stored));
+        });
+        if (!pack.isValid()) {
+            throw Utils.error("Failed to write pack %s", pack.getPackFile().getName());
+        }
+        // The new pack is complete, the old copies of its objects can go now.
+        for (PackFile p : old) {
+            p.close();
+            if (!p.getIndexFile().equals(pack.getIndexFile())) {
+                p.getIndexFile().delete();
+                p.getPackFile().delete();
+            }
+        }
+        for (String SHA1 : loose) {
+            File f = looseFile(SHA1);
+            f.delete();
+            f.getParentFile().delete(); // only succeeds once the fan-out folder is empty
+        }
+        looseIndex().rewrite(kept);
+        packs = null;
+        return ids.size();
+    }
+}
@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Works out which objects a receiving repository is missing, for push and fetch, and sends only those.
+ * 1. Negotiation: the receiver names the commits it has, typically the heads of its branches, and has their whole history too.
+ *    The commits to send are those reachable from the wanted ones (through all parents) but not from these, which the sender's
+ *    commit-graph tells without asking anything (see CommitGraph.ancestorsExcept). The trees and blobs of those commits are then
+ *    walked one level at a time, asking the receiver which objects of the level it already has, in one batch per level.
+ *    An object the receiver has is never walked past, as having a tree means having everything below it. A Delta brings its base along
+ *    and a ChunkedBlob its chunks, if the receiver lacks them.
+ * 2. Transfer: the missing objects are sent one at a time as they are stored (see ObjectStore.openRaw), never decoded,
+ *    and each after every object it points to, so that a receiver left with only part of them never has a commit whose history
+ *    or tree it lacks. Only SHA1s are kept in memory, never the objects themselves.
+ * Pushing one new commit moves that commit and the trees and blobs it changed, however long the history behind it is.
+ * The receiver may be another repository on this machine, or one reached through a Transport. */
+
+class ObjectTransfer {
+
+    private final ObjectStore from;
+    private final CommitGraph graph;
+    /** Given SHA1s, returns those the receiver has. */
+    private final Function<List<String>, Set<String>> has;
+
+    /** The objects the receiver is missing, in the order they're sent, and the commits among them, parents first. */
+    private final List<String> objects = new ArrayList<>();
+    private final List<String> commits = new ArrayList<>();
+    /** The missing commits, as they're found. */
+    private final Set<String> missingCommits = new HashSet<>();
+
+    /** Prepare to send objects of the store FROM, whose commit-graph is GRAPH, to a receiver that answers which objects it has
+     * with HAS. */
+    ObjectTransfer(ObjectStore from, CommitGraph graph, Function<List<String>, Set<String>> has) {
+        this.from = from;
+        this.graph = graph;
+        this.has = has;
+    }
+
+    /** Prepare to send objects of the store FROM, whose commit-graph is GRAPH, to the store TO of another repository on this machine. */
+    ObjectTransfer(ObjectStore from, CommitGraph graph, ObjectStore to) {
+        this(from, graph, ids -> {
+            Set<String> res = new HashSet<>();
+            for (String SHA1 : ids) {
+                if (to.contains(SHA1)) {
+                    res.add(SHA1);
+                }
+            }
+            return res;
+        });
+    }
+
+    /** Find the objects reachable from the commits WANTS that a receiver having the commits HAVES is missing, see the class comment.
+     * Commits of HAVES the sender doesn't know are left out. */
+    void negotiate(Collection<String> wants, Collection<String> haves) {
+        negotiateObjects(wants, missingCommits(wants, haves));
+    }
+
+    /** The commits reachable from WANTS but not from the commits HAVES, the first step of negotiate. Only this step uses the
+     * commit-graph, and it asks the receiver nothing. */
+    Set<String> missingCommits(Collection<String> wants, Collection<String> haves) {
+        List<String> common = new ArrayList<>();
+        for (String SHA1 : haves) {
+            if (from.contains(SHA1)) {
+                common.add(SHA1);
+            }
+        }
+        return graph.ancestorsExcept(new LinkedHashSet<>(wants), common);
+    }
+
+    /** Find the objects reachable from the commits WANTS that the receiver is missing, given the commits MISSING it lacks
+     * (see missingCommits): the rest of negotiate, which asks the receiver about the trees and blobs. */
+    void negotiateObjects(Collection<String> wants, Set<String> missing) {
+        Map<String, List<String>> refs = new HashMap<>(); // the objects each missing object points to
+        Set<String> seen = new HashSet<>();
+        List<String> level = new ArrayList<>();
+        for (String SHA1 : missing) {
+            List<String> out = references(SHA1);
+            refs.put(SHA1, out);
+            seen.add(SHA1);
+            seen.addAll(from.read(SHA1, Commit.class).Parent); // either sent too, or the receiver has them
+            level.addAll(out);
+        }
+        while (!level.isEmpty()) {
+            List<String> ask = new ArrayList<>();
+            for (String SHA1 : level) {
+                // Tree.read builds the empty tree without reading it from the store, so no receiver needs it,
+                // and the sender may not have it: a repository from before trees (version-1 commits) never stored it
+                if (!SHA1.equals(Tree.EMPTY) && seen.add(SHA1)) {
+                    ask.add(SHA1);
+                }
+            }
+            Set<String> present = ask.isEmpty() ? new HashSet<>() : has.apply(ask);
+            List<String> next = new ArrayList<>();
+            for (String SHA1 : ask) {
+                if (!present.contains(SHA1)) {
+                    List<String> out = references(SHA1);
+                    refs.put(SHA1, out);
+                    next.addAll(out);
+                }
+            }
+            level = next;
+        }
+        order(wants, refs);
+    }
+
+    /** The SHA1s of the commits at the heads of all branches of REPO, its own and those fetched from its remotes. */
+    static List<String> heads(Repository repo) {
+        List<String> res = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(repo.LOCAL_BRANCH_FOLDER)) {
+            res.add(Utils.readContentsAsString(Utils.join(repo.LOCAL_BRANCH_FOLDER, name)));
+        }
+        File[] remotes = repo.REMOTE_REPO_FOLDER.listFiles(File::isDirectory);
+        for (File remote : remotes == null ? new File[0] : remotes) {
+            for (String name : Utils.plainFilenamesIn(remote)) {
+                if (!name.startsWith(".")) { // not .repoLocation
+                    res.add(Utils.readContentsAsString(Utils.join(remote, name)));
+                }
+            }
+        }
+        return res;
+    }
+
+    /** The SHA1s of the objects the missing object with the given SHA1 points to. Throws a GitletException if it can't be decoded. */
+    private List<String> references(String SHA1) {
+        try {
+            return readReferences(SHA1);
+        } catch (GitletException excp) {
+            throw excp;
+        } catch (RuntimeException excp) { // what decoding a corrupt object throws
+            throw Utils.error("Object %s is corrupt.", SHA1);
+        }
+    }
+
+    private List<String> readReferences(String SHA1) {
+        List<String> res = new ArrayList<>();
+        byte type = from.header(SHA1).type;
+        if (type == ObjectCodec.COMMIT) {
+            missingCommits.add(SHA1);
+            Commit c = from.read(SHA1, Commit.class);
+            res.addAll(c.Parent);
+            if (c.RootTree == null) { // a legacy commit lists its blobs itself
+                res.addAll(c.Blobs.values());
+            } else {
+                res.add(c.RootTree);
+            }
+        } else if (type == ObjectCodec.TREE) {
+            Tree t = from.read(SHA1, Tree.class);
+            res.addAll(t.getTrees().values());
+            res.addAll(t.getBlobs().values());
+        } else if (type == ObjectCodec.DELTA) {
+            res.add(from.read(SHA1, Delta.class).getBase());
+        } else if (type == ObjectCodec.CHUNKED) {
+            res.addAll(from.read(SHA1, ChunkedBlob.class).getChunks());
+        }
+        return res;
+    }
+
+    /** Put the missing objects REFS in the order they're sent: every object after all the missing objects it points to,
+     * found by a depth-first walk from WANTS that adds each object once its last reference is done. */
+    private void order(Collection<String> wants, Map<String, List<String>> refs) {
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>(); // index of the next reference to follow, for each object on the stack
+        for (String want : wants) {
+            if (refs.containsKey(want) && done.add(want)) {
+                stack.push(want);
+                next.push(0);
+            }
+            while (!stack.isEmpty()) {
+                List<String> out = refs.get(stack.peek());
+                int i = next.pop();
+                if (i < out.size()) {
+                    next.push(i + 1);
+                    String ref = out.get(i);
+                    if (refs.containsKey(ref) && done.add(ref)) {
+                        stack.push(ref);
+                        next.push(0);
+                    }
+                    continue;
+                }
+                String SHA1 = stack.pop();
+                objects.add(SHA1);
+                if (missingCommits.contains(SHA1)) {
+                    commits.add(SHA1);
+                }
+            }
+        }
+    }
+
+    /** The missing objects, in the order they're sent. */
+    List<String> objects() {
+        return objects;
+    }
+
+    /** The missing commits, parents before children. */
+    List<String> commits() {
+        return commits;
+    }
+
+    /** Copy the missing objects into the store TO, one at a time. */
+    void copyTo(ObjectStore to) {
+        for (String SHA1 : objects) {
+            try (InputStream in = from.openRaw(SHA1)) {
+                to.writeRaw(SHA1, in);
+            } catch (GitletException excp) { // a corrupt object, nothing refers to the ones copied so far
+                System.out.println(excp.getMessage());
+                System.exit(0);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Record the commits COMMITS, just received into the store STORE, in the MESSAGES and CATALOG of the receiving repository,
+     * and add HEAD (the commit it wanted) and the history behind it to its commit-GRAPH. */
+    static void index(ObjectStore store, MessageIndex messages, CommitCatalog catalog, CommitGraph graph,
+                      List<String> commits, String head) {
+        for (String SHA1 : commits) {
+            Commit c = store.read(SHA1, Commit.class);
+            messages.addIfMissing(SHA1, c.logMessage);
+            catalog.addIfMissing(SHA1, c.timeStamp);
+        }
+        graph.add(head);
+    }
+}
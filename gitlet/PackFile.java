@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/** A pack bundles many objects into a single data file, so that reading an object costs a seek instead of an open.
+ * Each pack comes as a pair of files under .gitlet/objects/pack:
+ * 1. pack-[name].pack: "GPAK", version, object count, followed by the bytes of every object (exactly what a loose object file would hold).
+ * 2. pack-[name].idx: "GIDX", version, object count, the table of sorted ids (see IdTable), then the offset and length of each object. */
+
+class PackFile {
+
+    static final byte[] PACK_MAGIC = "GPAK".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] INDEX_MAGIC = "GIDX".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    /** Size of the index header: magic, version and count. */
+    private static final int INDEX_HEADER = 12;
+
+    private final File packFile;
+    private final File indexFile;
+    private final MappedByteBuffer index;
+    private final int count;
+    private final IdTable ids;
+    private FileChannel data;
+
+    /** Open the pack described by INDEXFILE. The index is memory-mapped, the data file is opened on first read. */
+    PackFile(File indexFile) {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        packFile = new File(indexFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        try (FileChannel ch = FileChannel.open(indexFile.toPath())) {
+            index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] magic = new byte[4];
+        index.get(0, magic);
+        if (!Arrays.equals(magic, INDEX_MAGIC) || index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupted pack index %s", indexFile.getName());
+        }
+        count = index.getInt(8);
+        ids = new IdTable(index, INDEX_HEADER, count);
+    }
+
+    File getPackFile() {
+        return packFile;
+    }
+
+    File getIndexFile() {
+        return indexFile;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /** Whether this pack holds the object with the given full id. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** The channel of the pack file, opened on first use. Reads at a given position through it are safe from several threads at once. */
+    private synchronized FileChannel data() throws IOException {
+        if (data == null) {
+            data = FileChannel.open(packFile.toPath());
+        }
+        return data;
+    }
+
+    /** Return the stored bytes of the object with the given full id, or null if it isn't in this pack. */
+    byte[] read(String id) {
+        return read(id, Integer.MAX_VALUE);
+    }
+
+    /** Return at most the first LIMIT stored bytes of the object with the given full id, or null if it isn't in this pack. */
+    byte[] read(String id, int limit) {
+        int pos = find(id);
+        if (pos < 0) {
+            return null;
+        }
+        long offset = index.getLong(INDEX_HEADER + IdTable.size(count) + pos * 8);
+        int length = Math.min(limit, index.getInt(INDEX_HEADER + IdTable.size(count) + count * 8 + pos * 4));
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            FileChannel data = data();
+            while (buf.hasRemaining()) {
+                if (data.read(buf, offset + buf.position()) < 0) {
+                    throw Utils.error("Truncated pack %s", packFile.getName());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return buf.array();
+    }
+
+    /** All ids in this pack, in ascending order. */
+    List<String> ids() {
+        return ids.ids();
+    }
+
+    /** All ids in this pack that start with PREFIX (at least two hex digits), in ascending order, but no more than LIMIT of them. */
+    List<String> idsWithPrefix(String prefix, int limit) {
+        return ids.idsWithPrefix(prefix, limit);
+    }
+
+    private int find(String id) {
+        return ids.find(id);
+    }
+
+    /** Write a new pack under PACKFOLDER holding the objects of the given IDS (sorted, no duplicates), whose bytes are obtained from READER one at a time.
+     * Both files are written under temporary names and renamed in place, the index last, so readers never see a half-written pack. */
+    static PackFile write(File packFolder, List<String> ids, Function<String, byte[]> reader) {
+        packFolder.mkdirs();
+        String name = "pack-" + Utils.sha1(new ArrayList<Object>(ids));
+        File pack = Utils.join(packFolder, name + ".pack");
+        File idx = Utils.join(packFolder, name + ".idx");
+        File packTemp = Utils.join(packFolder, name + ".pack.tmp");
+        File idxTemp = Utils.join(packFolder, name + ".idx.tmp");
+        long[] offsets = new long[ids.size()];
+        int[] lengths = new int[ids.size()];
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(packTemp.toPath())))) {
+                out.write(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                long offset = 12;
+                for (int i = 0; i < ids.size(); i++) {
+                    byte[] content = reader.apply(ids.get(i));
+                    out.write(content);
+                    offsets[i] = offset;
+                    lengths[i] = content.length;
+                    offset += content.length;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(idxTemp.toPath())))) {
+                out.write(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                IdTable.write(out, ids);
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                for (int length : lengths) {
+                    out.writeInt(length);
+                }
+            }
+            Files.move(packTemp.toPath(), pack.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(idxTemp.toPath(), idx.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            packTemp.delete();
+            idxTemp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new PackFile(idx);
+    }
+
+    /** Release the data file, so the pack can be deleted. */
+    synchronized void close() {
+        if (data != null) {
+            try {
+                data.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            data = null;
+        }
+    }
+
+    /** Sanity check used by repack: the data file must start with the pack header. */
+    boolean isValid() {
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            return Arrays.equals(magic, PACK_MAGIC) && in.readInt() == VERSION && in.readInt() == count;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+}
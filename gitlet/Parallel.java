@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** The worker threads Gitlet spreads file system work over: one ForkJoinPool shared by all commands of a run.
+ * Its size is taken from the system property THREADS_PROPERTY (e.g. java -Dgitlet.threads=4 gitlet.Main status),
+ * and defaults to the number of available processors. With one thread everything runs on the calling thread. */
+
+class Parallel {
+
+    static final String THREADS_PROPERTY = "gitlet.threads";
+
+    private static ForkJoinPool pool;
+
+    /** The configured number of worker threads, at least 1. */
+    static int threads() {
+        String value = System.getProperty(THREADS_PROPERTY);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException excp) {
+                throw Utils.error("Invalid %s: %s", THREADS_PROPERTY, value);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** The shared pool, created on first use. */
+    static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads());
+        }
+        return pool;
+    }
+
+    /** Apply F to every item of ITEMS on the worker threads, returning the results in the order of ITEMS.
+     * F must be safe to call from several threads at once. An exception thrown by F is rethrown here. */
+    static <T, R> List<R> map(List<T> items, Function<T, R> f) {
+        if (items.size() < 2 || threads() == 1) {
+            List<R> res = new ArrayList<>(items.size());
+            for (T item : items) {
+                res.add(f.apply(item));
+            }
+            return res;
+        }
+        return pool().submit(() -> items.parallelStream().map(f).collect(Collectors.toList())).join();
+    }
+}
@@ -21,6 +21,24 @@ public class Repository {
     /** Stores all commit objects AND Blob objects */
     File OBJECT_FOLDER = Utils.join(GITLET_SYSTEM, "objects");
 
+    /** Stores packs, each of which bundles many objects into one data file plus a sorted index, see PackFile */
+    File PACK_FOLDER = Utils.join(OBJECT_FOLDER, "pack");
+
+    /** Stores the index of loose objects, see LooseIndex */
+    File INFO_FOLDER = Utils.join(OBJECT_FOLDER, "info");
+
+    /** Stores the parents, generation numbers and time stamps of all commits, see CommitGraph */
+    File COMMIT_GRAPH = Utils.join(GITLET_SYSTEM, "commit-graph");
+
+    /** Stores the log messages of all commits, indexed for find, see MessageIndex */
+    File MESSAGE_INDEX = Utils.join(GITLET_SYSTEM, "message-index");
+
+    /** Lists all commits with their time stamps, see CommitCatalog */
+    File COMMIT_CATALOG = Utils.join(GITLET_SYSTEM, "commit-catalog");
+
+    /** Stores the journal of the filesystem monitor, see FsMonitor */
+    File FSMONITOR_FOLDER = Utils.join(GITLET_SYSTEM, "fsmonitor");
+
     /** Stores the reference of the current HEAD commit.
      * If HEAD is pointing to a branch, the .git/HEAD file will contain a reference to that branch, like ".gitlet/refs/head/master"
      * If in detached Head state (not on any branch, but on a specific commit), the .git/HEAD file will contain the commit hash directly. */
@@ -51,6 +69,18 @@ public class Repository {
 
         OBJECT_FOLDER = Utils.join(GITLET_SYSTEM, "objects");
 
+        PACK_FOLDER = Utils.join(OBJECT_FOLDER, "pack");
+
+        INFO_FOLDER = Utils.join(OBJECT_FOLDER, "info");
+
+        COMMIT_GRAPH = Utils.join(GITLET_SYSTEM, "commit-graph");
+
+        MESSAGE_INDEX = Utils.join(GITLET_SYSTEM, "message-index");
+
+        COMMIT_CATALOG = Utils.join(GITLET_SYSTEM, "commit-catalog");
+
+        FSMONITOR_FOLDER = Utils.join(GITLET_SYSTEM, "fsmonitor");
+
         HEAD = Utils.join(GITLET_SYSTEM, "HEAD");
 
         REF_FOLDER = Utils.join(GITLET_SYSTEM, "refs");
@@ -1,21 +1,102 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /** The specific class of objects that represents the current state of StagingArea, which should always be empty after commiting */
 
 public class StagedFile implements Serializable {
+    /** Pinned to the value Java derived for the first on-disk version of this class, so that existing index files stay readable. */
+    private static final long serialVersionUID = 6046509538018435354L;
+
     Map<File, String> Addition;
     Set<File> Removal;
+    /** The stat data of working files when their content was last hashed, with the SHA1 it had, see Watcher.
+     * Null in index files written before it was added. */
+    private Map<File, Stat> Stats;
+    /** The token of the filesystem monitor (see FsMonitor) that Stats are up to date with, or null. */
+    String MonitorToken;
 
     public StagedFile() {
         Addition = new HashMap<>();
         Removal = new HashSet<>();
+        Stats = new HashMap<>();
+    }
+
+    Map<File, Stat> getStats() {
+        if (Stats == null) {
+            Stats = new HashMap<>();
+        }
+        return Stats;
+    }
+
+    /** What the file system tells about a file without reading it: as long as none of it changes, neither did the content.
+     * The change time and inode are -1 where the file system doesn't provide them. */
+    static class Stat implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long size;
+        final long mtime; // in nanoseconds since the epoch
+        final long ctime;
+        final long inode;
+        /** SHA1 of the content the file had with this stat data. */
+        final String SHA1;
+
+        private Stat(long size, long mtime, long ctime, long inode, String SHA1) {
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+            this.inode = inode;
+            this.SHA1 = SHA1;
+        }
+
+        /** The current stat data of file F, or null if it can't be read. */
+        static Stat of(File f) {
+            try {
+                try {
+                    Map<String, Object> attrs = Files.readAttributes(f.toPath(), "unix:size,lastModifiedTime,ctime,ino");
+                    return new Stat((Long) attrs.get("size"), nanos((FileTime) attrs.get("lastModifiedTime")),
+                        nanos((FileTime) attrs.get("ctime")), (Long) attrs.get("ino"), null);
+                } catch (UnsupportedOperationException excp) {
+                    BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+                    return new Stat(attrs.size(), nanos(attrs.lastModifiedTime()), -1, -1, null);
+                }
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        private static long nanos(FileTime time) {
+            return time.to(TimeUnit.NANOSECONDS);
+        }
+
+        /** Stat data that couldn't be read, for the content with the given SHA1. It's never recorded. */
+        static Stat unknown(String SHA1) {
+            return new Stat(-1, -1, -1, -1, SHA1);
+        }
+
+        boolean isKnown() {
+            return size >= 0;
+        }
+
+        /** This stat data, recorded for the content with the given SHA1. */
+        Stat withHash(String SHA1) {
+            return new Stat(size, mtime, ctime, inode, SHA1);
+        }
+
+        /** Whether OTHER has the same stat data as this. */
+        boolean sameAs(Stat other) {
+            return size == other.size && mtime == other.mtime && ctime == other.ctime && inode == other.inode;
+        }
     }
 
 }
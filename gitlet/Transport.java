@@ -0,0 +1,369 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Remotes served by "gitlet serve" (see Daemon), named by URLs like gitlet://host:port/path, and the protocol both ends speak over one
+ * TCP connection. Numbers are big-endian, SHA1s are 20 raw bytes and strings are modified UTF-8 (see DataOutputStream). Lists of SHA1s are
+ * a count, then the SHA1s; a count beyond BATCH in a query, or beyond MAX_IDS elsewhere, ends the connection (the server sends ERROR).
+ * 1. The client says hello: MAGIC, VERSION, FETCH or PUSH, the path of the repository in the served folder and the name of the branch.
+ *    The server answers OK, or ERROR and a message for the client to print.
+ * 2. Fetch: the server sends the head of the branch, and the client the heads of its branches (see ObjectTransfer.heads).
+ *    Then the server sends the objects the client is missing, and the client receives them.
+ *    Push: the server sends whether the branch exists, its head if it does, and the heads of its branches. Then the client sends the
+ *    objects the server is missing and the new head of the branch, and the server answers OK once the branch points to it, or ERROR.
+ * Objects are sent (see send) and received (see receive) the same way in both directions, as a stream of frames:
+ * 1. QUERY and up to BATCH SHA1s: which of these objects the receiver has. The answer is a bitmap with one bit per SHA1.
+ *    The sender sends up to WINDOW queries before it reads the first answer, so the round trips of a large level overlap.
+ * 2. OBJECT, its SHA1, then its stored bytes in pieces of at most PIECE bytes, each after its length, and a length of 0.
+ *    The receiver writes each piece out as it reads it, so no object is ever held in memory as a whole, and TCP's flow control
+ *    holds a sender back to the pace of its receiver.
+ * 3. END, then the SHA1s of the commits sent, parents first, for the receiver to index. */
+
+class Transport {
+
+    static final String SCHEME = "gitlet";
+    /** Port of "gitlet serve" if neither it nor the URL names one, the same as git daemon's. */
+    static final int DEFAULT_PORT = 9418;
+    static final byte[] MAGIC = {'G', 'L', 'T', 'P'};
+    static final byte VERSION = 1;
+
+    static final byte FETCH = 'F';
+    static final byte PUSH = 'P';
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final byte QUERY = 'Q';
+    static final byte OBJECT = 'O';
+    static final byte END = 'E';
+
+    /** Most SHA1s asked about in one query. */
+    static final int BATCH = 1024;
+    /** Most SHA1s in a list of heads or of commits sent, far more than any repository has. Larger counts are refused before anything
+     * is allocated for them, so a bad peer can't make the other end run out of memory. */
+    static final int MAX_IDS = 1 << 20;
+    /** Most queries sent before the answer to the first is read. */
+    static final int WINDOW = 8;
+    /** Most bytes of an object sent in one piece. */
+    static final int PIECE = 64 * 1024;
+    /** How long connecting may take, in milliseconds. */
+    static final int CONNECT_TIMEOUT = 10000;
+
+    private final String host;
+    private final int port;
+    private final String path;
+
+    /** The remote named by URL, which is null unless URL is a valid gitlet:// URL. */
+    static Transport of(String url) {
+        if (!url.startsWith(SCHEME + "://")) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() == null) {
+                return null;
+            }
+            return new Transport(uri.getHost(), uri.getPort() < 0 ? DEFAULT_PORT : uri.getPort(), uri.getPath());
+        } catch (URISyntaxException excp) {
+            return null;
+        }
+    }
+
+    private Transport(String host, int port, String path) {
+        this.host = host;
+        this.port = port;
+        this.path = path == null ? "" : path;
+    }
+
+    /** Fetch the branch BRANCH into the repository REPO, with its store STORE and indexes MESSAGES, CATALOG and GRAPH: receive the
+     * objects of its history REPO is missing and index them. Returns the head of the branch. */
+    String fetch(String branch, Repository repo, ObjectStore store, MessageIndex messages, CommitCatalog catalog, CommitGraph graph) {
+        try (Socket socket = connect()) {
+            DataInputStream in = input(socket);
+            DataOutputStream out = output(socket);
+            hello(out, FETCH, branch);
+            expectOK(in);
+            String head = readId(in);
+            writeIds(out, ObjectTransfer.heads(repo));
+            out.flush();
+            List<String> commits = receive(in, out, store);
+            ObjectTransfer.index(store, messages, catalog, graph, commits, head);
+            return head;
+        } catch (GitletException excp) { // a corrupt object, the branch isn't fetched
+            System.out.println(excp.getMessage());
+            System.exit(0);
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Push the commit HEAD of the store STORE, whose commit-graph is GRAPH, to the branch BRANCH: send the objects of its history the
+     * remote is missing, and make the branch point to it. */
+    void push(String branch, String head, ObjectStore store, CommitGraph graph) {
+        try (Socket socket = connect()) {
+            DataInputStream in = input(socket);
+            DataOutputStream out = output(socket);
+            hello(out, PUSH, branch);
+            expectOK(in);
+            String remoteHead = in.readBoolean() ? readId(in) : null;
+            List<String> haves = readIds(in, MAX_IDS);
+            if (remoteHead != null && !graph.isAncestor(remoteHead, head)) {
+                System.out.println("Please pull down remote changes before pushing.");
+                System.exit(0);
+            }
+            ObjectTransfer transfer = new ObjectTransfer(store, graph, has(in, out));
+            transfer.negotiate(List.of(head), haves);
+            send(store, transfer, out);
+            writeId(out, head);
+            out.flush();
+            expectOK(in);
+        } catch (GitletException excp) { // a corrupt object, the remote branch isn't moved
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private Socket connect() {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        } catch (IOException excp) {
+            System.out.println("Could not connect to " + host + ":" + port + ".");
+            System.exit(0);
+        }
+        return socket;
+    }
+
+    private void hello(DataOutputStream out, byte command, String branch) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(command);
+        out.writeUTF(path);
+        out.writeUTF(branch);
+        out.flush();
+    }
+
+    /** Read the server's answer, and if it's an error, print its message and exit. */
+    private static void expectOK(DataInputStream in) throws IOException {
+        if (in.readByte() != OK) {
+            System.out.println(in.readUTF());
+            System.exit(0);
+        }
+    }
+
+    static DataInputStream input(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), Utils.BUFFER_SIZE));
+    }
+
+    static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), Utils.BUFFER_SIZE));
+    }
+
+    /** What an ObjectTransfer asks the receiver at the other end of IN and OUT about which objects it has, see the class comment. */
+    static Function<List<String>, Set<String>> has(DataInputStream in, DataOutputStream out) {
+        return ids -> {
+            Set<String> res = new HashSet<>();
+            try {
+                int answered = 0;
+                for (int sent = 0; sent < ids.size(); sent += BATCH) {
+                    List<String> batch = ids.subList(sent, Math.min(ids.size(), sent + BATCH));
+                    out.writeByte(QUERY);
+                    writeIds(out, batch);
+                    if (sent / BATCH - answered + 1 >= WINDOW) {
+                        out.flush();
+                        readAnswer(in, ids, answered++, res);
+                    }
+                }
+                out.flush();
+                while (answered * BATCH < ids.size()) {
+                    readAnswer(in, ids, answered++, res);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return res;
+        };
+    }
+
+    /** Read the answer to the query of batch BATCHINDEX of IDS, adding the SHA1s the receiver has to RES. */
+    private static void readAnswer(DataInputStream in, List<String> ids, int batchIndex, Set<String> res) throws IOException {
+        int from = batchIndex * BATCH;
+        int n = Math.min(ids.size() - from, BATCH);
+        byte[] bits = new byte[(n + 7) / 8];
+        in.readFully(bits);
+        for (int i = 0; i < n; i++) {
+            if ((bits[i / 8] & (1 << (i % 8))) != 0) {
+                res.add(ids.get(from + i));
+            }
+        }
+    }
+
+    /** Send the objects TRANSFER found missing, from the store FROM, then END and the commits among them. */
+    static void send(ObjectStore from, ObjectTransfer transfer, DataOutputStream out) throws IOException {
+        byte[] buffer = new byte[PIECE];
+        for (String SHA1 : transfer.objects()) {
+            out.writeByte(OBJECT);
+            writeId(out, SHA1);
+            try (InputStream raw = from.openRaw(SHA1)) {
+                int n;
+                while ((n = raw.readNBytes(buffer, 0, PIECE)) > 0) {
+                    out.writeInt(n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            out.writeInt(0);
+        }
+        out.writeByte(END);
+        writeIds(out, transfer.commits());
+        out.flush();
+    }
+
+    /** Answer the queries and store the objects coming from IN into the store TO, until END. Returns the commits received.
+     * An object whose bytes don't match its SHA1 (see ObjectStore.writeRaw) fails the whole transfer: the rest of the objects are read
+     * but not stored, so both ends stay in step, and the GitletException of the first one is thrown at END. */
+    static List<String> receive(DataInputStream in, DataOutputStream out, ObjectStore to) throws IOException {
+        GitletException failure = null;
+        while (true) {
+            byte frame = in.readByte();
+            if (frame == QUERY) {
+                List<String> ids = readIds(in, BATCH);
+                byte[] bits = new byte[(ids.size() + 7) / 8];
+                for (int i = 0; i < ids.size(); i++) {
+                    if (to.contains(ids.get(i))) {
+                        bits[i / 8] |= 1 << (i % 8);
+                    }
+                }
+                out.write(bits);
+                if (in.available() == 0) { // no more queries waiting, the sender is waiting for the answers
+                    out.flush();
+                }
+            } else if (frame == OBJECT) {
+                String SHA1 = readId(in);
+                Pieces pieces = new Pieces(in);
+                if (failure == null) {
+                    try {
+                        to.writeRaw(SHA1, pieces);
+                    } catch (GitletException excp) {
+                        failure = excp;
+                    }
+                }
+                pieces.skipRest();
+            } else if (frame == END) {
+                List<String> commits = readIds(in, MAX_IDS);
+                if (failure != null) {
+                    throw failure;
+                }
+                return commits;
+            } else {
+                throw Utils.error("Unexpected frame %d", frame);
+            }
+        }
+    }
+
+    /** The stored bytes of one object, read from its pieces. */
+    private static class Pieces extends InputStream {
+        private final DataInputStream in;
+        /** Bytes left in the current piece, -1 once the last piece is read. */
+        private int left;
+
+        Pieces(DataInputStream in) {
+            this.in = in;
+        }
+
+        /** Whether there are bytes left, reading the length of the next piece if needed. */
+        private boolean more() throws IOException {
+            while (left == 0) {
+                left = in.readInt();
+                if (left == 0) {
+                    left = -1;
+                }
+            }
+            return left > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!more()) {
+                return -1;
+            }
+            left -= 1;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!more()) {
+                return -1;
+            }
+            int n = in.read(b, off, Math.min(len, left));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            left -= n;
+            return n;
+        }
+
+        /** Read the pieces up to the end of the object, e.g. if it was already stored. */
+        void skipRest() throws IOException {
+            while (more()) {
+                int n = in.skipBytes(left);
+                if (n == 0) { // skipBytes doesn't tell the end of the stream apart
+                    in.readUnsignedByte();
+                    n = 1;
+                }
+                left -= n;
+            }
+        }
+    }
+
+    static String readId(DataInputStream in) throws IOException {
+        byte[] id = new byte[Utils.UID_LENGTH / 2];
+        in.readFully(id);
+        return Utils.bytesToHex(id);
+    }
+
+    static void writeId(DataOutputStream out, String SHA1) throws IOException {
+        out.write(Utils.hexToBytes(SHA1));
+    }
+
+    /** Read a count, then that many SHA1s. A count larger than MAX is a ProtocolException. */
+    static List<String> readIds(DataInputStream in, int max) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > max) {
+            throw new ProtocolException("Bad count of SHA1s: " + n);
+        }
+        List<String> res = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            res.add(readId(in));
+        }
+        return res;
+    }
+
+    static void writeIds(DataOutputStream out, List<String> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (String SHA1 : ids) {
+            writeId(out, SHA1);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A Tree object represents one directory of a snapshot: the files directly in it, by name and blob SHA1,
+ * and its subdirectories, by name and the SHA1 of their own Tree. A commit points to the Tree of the project folder.
+ *
+ * Trees are stored under the SHA1 of their encoding like any other object, so a directory that didn't change between two
+ * commits is the very same Tree in both. Committing a change only writes new Trees along the changed paths, and comparing two
+ * snapshots (see diff) skips every subdirectory whose SHA1 is the same on both sides without reading it.
+ * Paths handed to and returned by this class are relative to the project folder, with "/" as separator. */
+
+public class Tree implements Dumpable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** SHA1 of the Tree of an empty directory. */
+    static final String EMPTY = new Tree(new TreeMap<>(), new TreeMap<>()).hash();
+
+    private final SortedMap<String, String> Blobs;
+    private final SortedMap<String, String> Trees;
+
+    Tree(SortedMap<String, String> blobs, SortedMap<String, String> trees) {
+        Blobs = Collections.unmodifiableSortedMap(blobs);
+        Trees = Collections.unmodifiableSortedMap(trees);
+    }
+
+    /** Files directly in this directory: name -> blob SHA1, ordered by name. */
+    public SortedMap<String, String> getBlobs() {
+        return Blobs;
+    }
+
+    /** Subdirectories: name -> tree SHA1, ordered by name. */
+    public SortedMap<String, String> getTrees() {
+        return Trees;
+    }
+
+    public String hash() {
+        return Utils.sha1((Object) ObjectCodec.encode(this));
+    }
+
+    /** A change of one file between two snapshots: its blob SHA1 before and after, null where the file doesn't exist. */
+    static class Change {
+        final String path;
+        final String before;
+        final String after;
+
+        Change(String path, String before, String after) {
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static Tree read(ObjectStore store, String SHA1) {
+        if (SHA1 == null || SHA1.equals(EMPTY)) {
+            return new Tree(new TreeMap<>(), new TreeMap<>());
+        }
+        return store.read(SHA1, Tree.class);
+    }
+
+    /** Apply CHANGES (path -> new blob SHA1, or null to remove the file) to the tree ROOT (null for an empty one), store the
+     * Trees that change as a result and return the SHA1 of the new root. Subdirectories without changes keep their SHA1 and aren't read.
+     * Directories left empty are dropped. */
+    static String update(ObjectStore store, String root, Map<String, String> changes) {
+        Tree base = read(store, root);
+        TreeMap<String, String> blobs = new TreeMap<>(base.Blobs);
+        TreeMap<String, String> trees = new TreeMap<>(base.Trees);
+        Map<String, Map<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>()).put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                blobs.remove(path);
+            } else {
+                blobs.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : below.entrySet()) {
+            String sub = update(store, trees.get(e.getKey()), e.getValue());
+            if (sub.equals(EMPTY)) {
+                trees.remove(e.getKey());
+            } else {
+                trees.put(e.getKey(), sub);
+            }
+        }
+        Tree res = new Tree(blobs, trees);
+        String SHA1 = res.hash();
+        store.write(SHA1, res);
+        return SHA1;
+    }
+
+    /** All files under the tree ROOT: path -> blob SHA1. */
+    static Map<String, String> files(ObjectStore store, String root) {
+        Map<String, String> res = new HashMap<>();
+        collect(store, root, "", res);
+        return res;
+    }
+
+    private static void collect(ObjectStore store, String SHA1, String prefix, Map<String, String> res) {
+        Tree t = read(store, SHA1);
+        for (Map.Entry<String, String> e : t.Blobs.entrySet()) {
+            res.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t.Trees.entrySet()) {
+            collect(store, e.getValue(), prefix + e.getKey() + "/", res);
+        }
+    }
+
+    /** The files under the tree ROOT as (path, blob SHA1), in ascending order of path, read one Tree at a time:
+     * only the Trees along the current path are held in memory. */
+    static Iterator<Map.Entry<String, String>> walk(ObjectStore store, String root) {
+        return new Walk(store, root);
+    }
+
+    private static class Walk implements Iterator<Map.Entry<String, String>> {
+        private final ObjectStore store;
+        /** For each folder along the current path, its entries not visited yet, and its path. */
+        private final Deque<Iterator<Map.Entry<String, String>>> pending = new ArrayDeque<>();
+        private final Deque<String> prefixes = new ArrayDeque<>();
+        private Map.Entry<String, String> next;
+
+        Walk(ObjectStore store, String root) {
+            this.store = store;
+            enter(root, "");
+            advance();
+        }
+
+        /** Start on the entries of the Tree SHA1 at path PREFIX. A subdirectory is sorted as its name followed by "/",
+         * so that paths come out in the order of their strings. */
+        private void enter(String SHA1, String prefix) {
+            Tree t = read(store, SHA1);
+            TreeMap<String, String> entries = new TreeMap<>(t.Blobs);
+            for (Map.Entry<String, String> e : t.Trees.entrySet()) {
+                entries.put(e.getKey() + "/", e.getValue());
+            }
+            pending.push(entries.entrySet().iterator());
+            prefixes.push(prefix);
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !pending.isEmpty()) {
+                Iterator<Map.Entry<String, String>> entries = pending.peek();
+                if (!entries.hasNext()) {
+                    pending.pop();
+                    prefixes.pop();
+                    continue;
+                }
+                Map.Entry<String, String> e = entries.next();
+                if (e.getKey().endsWith("/")) {
+                    enter(e.getValue(), prefixes.peek() + e.getKey());
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>(prefixes.peek() + e.getKey(), e.getValue());
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> res = next;
+            advance();
+            return res;
+        }
+    }
+
+    /** The blob SHA1 of the file at PATH under the tree ROOT, or null if there's no such file. Only the Trees along PATH are read. */
+    static String lookup(ObjectStore store, String root, String path) {
+        String SHA1 = root;
+        String[] names = path.split("/");
+        for (int i = 0; i < names.length - 1; i++) {
+            SHA1 = read(store, SHA1).Trees.get(names[i]);
+            if (SHA1 == null) {
+                return null;
+            }
+        }
+        return read(store, SHA1).Blobs.get(names[names.length - 1]);
+    }
+
+    /** The files that differ between the trees BEFORE and AFTER (either may be null for an empty one), ordered by path (as strings).
+     * Subdirectories with the same SHA1 on both sides are skipped without being read. */
+    static List<Change> diff(ObjectStore store, String before, String after) {
+        List<Change> res = new ArrayList<>();
+        diff(store, before, after, "", res);
+        return res;
+    }
+
+    private static void diff(ObjectStore store, String before, String after, String prefix, List<Change> res) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        Tree a = read(store, before);
+        Tree b = read(store, after);
+        // files and subdirectories in one sorted walk, a subdirectory sorting as its name followed by "/" as its paths do
+        TreeSet<String> names = new TreeSet<>(a.Blobs.keySet());
+        names.addAll(b.Blobs.keySet());
+        for (String name : a.Trees.keySet()) {
+            names.add(name + "/");
+        }
+        for (String name : b.Trees.keySet()) {
+            names.add(name + "/");
+        }
+        for (String name : names) {
+            if (name.endsWith("/")) {
+                String folder = name.substring(0, name.length() - 1);
+                diff(store, a.Trees.get(folder), b.Trees.get(folder), prefix + name, res);
+            } else if (!Objects.equals(a.Blobs.get(name), b.Blobs.get(name))) {
+                res.add(new Change(prefix + name, a.Blobs.get(name), b.Blobs.get(name)));
+            }
+        }
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("Blobs: %s%nTrees: %s%n", Blobs, Trees);
+    }
+}
@@ -1,11 +1,13 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -17,6 +19,9 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 
 /** Assorted utilities.
@@ -31,6 +36,9 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Size of the buffers used when streaming file contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
@@ -57,6 +65,57 @@ class Utils {
         }
     }
 
+    /** Returns a fresh SHA-1 MessageDigest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  Equal to sha1(readContents(FILE)), but reads FILE
+     *  through a fixed-size buffer, so that memory use doesn't depend on
+     *  the size of FILE.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static String sha1File(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = sha1Digest();
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytesToHex(md.digest());
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which must
+     *  have an even number of digits. */
+    static byte[] hexToBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String bytesToHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -152,6 +211,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from CONTENT, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] content,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(content));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -220,6 +295,48 @@ class Utils {
         }
     }
 
+    /* COMPRESSION UTILITIES */
+
+    /** Returns CONTENT compressed with the deflate algorithm. */
+    static byte[] compress(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream stream =
+            new ByteArrayOutputStream(Math.max(64, content.length / 2));
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            stream.write(buf, 0, n);
+        }
+        deflater.end();
+        return stream.toByteArray();
+    }
+
+    /** Returns the bytes compressed in CONTENT[OFFSET..], as produced by
+     *  compress.  Throws IllegalArgumentException in case of problems. */
+    static byte[] decompress(byte[] content, int offset) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(content, offset, content.length - offset);
+        ByteArrayOutputStream stream =
+            new ByteArrayOutputStream(content.length * 3);
+        byte[] buf = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                stream.write(buf, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return stream.toByteArray();
+    }
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -2,86 +2,231 @@ package gitlet;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.RecursiveTask;
 
 
 /** The specific class of objects through which we can capture project files of different states in the current commit, including "staged for addition/removal", "untracked" and "changed but not staged".
- * For each state, we collect its files of all cases into one instance variable */
+ * For each state, we collect its files of all cases into one instance variable, sorted by path.
+ * The working tree is listed, and the files whose content is needed are hashed, on the worker threads of Parallel.
+ * Folders and files ignored by the .gitletignore file (see IgnoreRules) are left out of the listing, ignored folders without even being opened. */
 
 public class Watcher {
     /**
      * files in CWD that neither _tracked_ in current commit nor staged for addition.
      */
-    private final Map<File, String> untracked1 = new HashMap<>();
+    private final Map<File, String> untracked1 = new TreeMap<>();
     /**
      * files that have been staged for removal, but then re-created in CWD
      */
-    private final Set<File> untracked21 = new HashSet<>();
-    private final Map<File, String> untracked22 = new HashMap<>();
+    private final Set<File> untracked21 = new TreeSet<>();
+    private final Map<File, String> untracked22 = new TreeMap<>();
     /**
      * Files tracked in current commit, with content changed in CWD but not staged for addition;
      */
-    private final Map<File, String> changed1 = new HashMap<>();
+    private final Map<File, String> changed1 = new TreeMap<>();
     /**
      * Files staged for addition, changed in CWD, but (this change) not staged.
      */
-    private final Set<File> changed21 = new HashSet<>();
-    private final Map<File, String> changed22 = new HashMap<>();
+    private final Set<File> changed21 = new TreeSet<>();
+    private final Map<File, String> changed22 = new TreeMap<>();
     /**
      * Files staged for addition, but deleted in the working directory.
      */
-    private final Set<File> changed31 = new HashSet<>();
-    private final Set<File> changed32 = new HashSet<>();
+    private final Set<File> changed31 = new TreeSet<>();
+    private final Set<File> changed32 = new TreeSet<>();
     /**
      * Files tracked in current commit, deleted in CWD, but not staged for removal.
      */
-    private final Set<File> changed4 = new HashSet<>();
+    private final Set<File> changed4 = new TreeSet<>();
 
     private final StagedFile staged;
     private final List<File> cwdFiles;
-    private final Map<File, String> commitedFile = Commit.getHeadCommit().Blobs;
+    /** Content SHA1s of working files, as far as they have been needed so far. */
+    private final Map<File, String> hashed = new HashMap<>();
+    /** When the index was last written, in nanoseconds since the epoch. Stat data recorded at or after it can't be trusted yet, see contentHash. */
+    private final long indexTime;
+    /** Whether stat data was recorded that isn't in the index file yet. */
+    private boolean statsChanged;
+    private final Commit head = Commit.getHeadCommit();
+    /** Whether the states above have been worked out, see classify. */
+    private boolean classified;
+    /** Files in CWD the filesystem monitor reported as changed, or null if CWD was listed as a whole (see FsMonitor).
+     * All other files are known to be unchanged since they were last hashed. */
+    private Set<File> dirty;
+    /** The token of the filesystem monitor that classify brings the index up to date with, or null if there's no monitor. */
+    private String monitorToken;
+    private final IgnoreRules ignored = IgnoreRules.load(repo.PROJECT_FOLDER);
 
     private final static File CWD = new File(System.getProperty("user.dir"));
     private final static Repository repo = new Repository();
+    private final static ObjectStore store = new ObjectStore(repo);
 
     public Watcher() {
         staged = Utils.readObject(repo.STAGING_FILE, StagedFile.class);
-        cwdFiles = getAbsolutePaths(repo.PROJECT_FOLDER, new ArrayList<>());
+        StagedFile.Stat index = StagedFile.Stat.of(repo.STAGING_FILE);
+        indexTime = index == null ? Long.MIN_VALUE : index.mtime;
+        FsMonitor.Changes changes = new FsMonitor(repo).changedSince(staged.MonitorToken);
+        if (changes != null) {
+            monitorToken = changes.token;
+        }
+        if (changes != null && changes.paths != null && !changes.paths.contains(IgnoreRules.FILE_NAME)) {
+            cwdFiles = listChanged(changes.paths);
+        } else { // with new ignore rules, files left out last time may have to be listed
+            cwdFiles = Parallel.pool().invoke(new Scan(repo.PROJECT_FOLDER, "", ignored));
+        }
+        Collections.sort(cwdFiles);
     }
 
-    private List<File> getAbsolutePaths(File CURRENT_PATH, List<File> files) {
-        if (CURRENT_PATH.isFile()) {
-            files.add(CURRENT_PATH);
+    /** List the files in CWD from those of the last time (the files with stat data in the index) and the PATHS the filesystem monitor
+     * reported as changed since: those are dropped, along with everything under them, and whatever is there now and isn't ignored is listed again. */
+    private List<File> listChanged(Set<String> paths) {
+        TreeSet<String> files = new TreeSet<>();
+        for (File f : staged.getStats().keySet()) {
+            files.add(f.getPath());
+        }
+        dirty = new HashSet<>();
+        for (String path : paths) {
+            File f = Commit.absoluteFile(path);
+            files.remove(f.getPath());
+            files.subSet(f.getPath() + File.separator, f.getPath() + (char) (File.separatorChar + 1)).clear();
+            if (f.isFile() && !ignored.excludes(path, false)) {
+                dirty.add(f);
+            } else if (f.isDirectory() && !ignored.excludes(path, true)) {
+                dirty.addAll(Parallel.pool().invoke(new Scan(f, path + "/", ignored)));
+            }
         }
-        else {
-            for (File f : CURRENT_PATH.listFiles()) {
-                if(f.getName().equals(".gitlet")) {
-                    continue;
+        List<File> res = new ArrayList<>(dirty);
+        for (String path : files) {
+            res.add(new File(path));
+        }
+        return res;
+    }
+
+    /** Lists all files under a folder (but not under .gitlet) that aren't ignored, with its subfolders listed by tasks of their own.
+     * The folder's path relative to the project folder (ending with "/", or empty for the project folder) is passed along to match the rules. */
+    private static class Scan extends RecursiveTask<List<File>> {
+        private static final long serialVersionUID = 1L;
+        private final File folder;
+        private final String prefix;
+        private final IgnoreRules rules;
+
+        Scan(File folder, String prefix, IgnoreRules rules) {
+            this.folder = folder;
+            this.prefix = prefix;
+            this.rules = rules;
+        }
+
+        @Override
+        protected List<File> compute() {
+            List<File> res = new ArrayList<>();
+            File[] children = folder.listFiles();
+            if (children == null) {
+                return res;
+            }
+            List<Scan> subfolders = new ArrayList<>();
+            for (File f : children) {
+                String path = prefix + f.getName();
+                if (f.isFile()) {
+                    if (!rules.isIgnored(path, false)) {
+                        res.add(f);
+                    }
+                } else if (f.isDirectory() && !f.getName().equals(".gitlet") && !rules.isIgnored(path, true)) {
+                    Scan task = new Scan(f, path + "/", rules);
+                    task.fork();
+                    subfolders.add(task);
                 }
-                getAbsolutePaths(f, files);
             }
+            for (Scan task : subfolders) {
+                res.addAll(task.join());
+            }
+            return res;
+        }
+    }
+
+    /** The stat data of working file F with the SHA1 of its content. The file is only read if its stat data differs from what
+     * the index recorded when it was last hashed. Nothing is changed, so this is safe to call from several threads at once.
+     * A file changed right after being hashed may keep the same stat data, if the file system's time stamps are coarse.
+     * So as in Git, recorded data isn't trusted when its mtime isn't older than the index file ("racy" entries): those files are hashed
+     * again until the index has been written at a later time.
+     * If INGEST, a file that has to be read is stored as a blob in the same pass, see storeFile. */
+    private StagedFile.Stat hashFile(File f, boolean ingest) {
+        StagedFile.Stat known = staged.getStats().get(f);
+        if (dirty != null && known != null && !dirty.contains(f) && known.mtime < indexTime) {
+            return known; // the filesystem monitor saw no change, it isn't even looked at
+        }
+        StagedFile.Stat now = StagedFile.Stat.of(f);
+        if (now != null && known != null && known.sameAs(now) && known.mtime < indexTime) {
+            return known;
+        }
+        String SHA1 = ingest ? storeFile(f) : Utils.sha1File(f);
+        return now == null ? StagedFile.Stat.unknown(SHA1) : now.withHash(SHA1);
+    }
+
+    /** Read working file F once to hash it and store it as a blob, unless a blob with that SHA1 is stored already, and return the SHA1.
+     * Files beyond ObjectStore.STREAM_THRESHOLD are streamed into chunks, the others are held in memory once, and stored as a delta
+     * against their committed version where that pays. Safe to call from several threads at once. */
+    private String storeFile(File f) {
+        if (f.length() > ObjectStore.STREAM_THRESHOLD) {
+            return store.writeBlobStream(f);
+        }
+        byte[] content = Utils.readContents(f);
+        String SHA1 = Utils.bytesToHex(Utils.sha1Digest().digest(content));
+        store.writeBlob(SHA1, content, head.blobAt(f));
+        return SHA1;
+    }
+
+    /** The SHA1 of the content of working file F, see hashFile. */
+    private String contentHash(File f) {
+        String res = hashed.get(f);
+        return res != null ? res : record(f, hashFile(f, false));
+    }
+
+    /** Hash all FILES that haven't been yet on the worker threads, so contentHash finds them ready. If INGEST, the files that are read
+     * are stored as blobs on the way. */
+    private void hashAll(Collection<File> files, boolean ingest) {
+        List<File> pending = new ArrayList<>();
+        for (File f : files) {
+            if (!hashed.containsKey(f)) {
+                pending.add(f);
+            }
+        }
+        List<StagedFile.Stat> stats = Parallel.map(pending, f -> hashFile(f, ingest));
+        for (int i = 0; i < pending.size(); i++) {
+            record(pending.get(i), stats.get(i));
+        }
+    }
+
+    /** Record that working file F has the stat data and content SHA1 of STAT, and return that SHA1. */
+    private String record(File f, StagedFile.Stat stat) {
+        hashed.put(f, stat.SHA1);
+        if (stat.isKnown() && stat != staged.getStats().get(f)) {
+            staged.getStats().put(f, stat);
+            statsChanged = true;
+        }
+        return stat.SHA1;
+    }
+
+    /** Write the index if stat data was recorded since it was read, dropping the data of files that are gone.
+     * Once all files have been classified, the stat data is complete and up to date with the filesystem monitor's token. */
+    public void saveStats() {
+        if (staged.getStats().keySet().retainAll(new HashSet<>(cwdFiles))) {
+            statsChanged = true;
+        }
+        if (classified && monitorToken != null && !monitorToken.equals(staged.MonitorToken)) {
+            staged.MonitorToken = monitorToken;
+            statsChanged = true;
+        }
+        if (statsChanged) {
+            Utils.writeObject(repo.STAGING_FILE, staged);
+            statsChanged = false;
         }
-        return files;
     }
 
     /**
      * Tracing untracked files (untracked1, untracked2 of this object)
      */
     public Boolean getUntrackedFile() {
-        for (File f : cwdFiles) {
-            if (!staged.Addition.containsKey(f)) {
-                String contentHash = Utils.sha1((Object) Utils.readContents(f));
-                if (!commitedFile.containsKey(f)) {
-                    untracked1.put(f, contentHash);
-                }
-                if (staged.Removal.contains(f)) {
-                    if (contentHash.equals(staged.Addition.get(f))) {
-                        untracked21.add(f);
-                    } else {
-                        untracked22.put(f, contentHash);
-                    }
-                }
-            }
-        }
+        classify();
         return !untracked1.isEmpty() || !untracked21.isEmpty() || !untracked22.isEmpty();
     }
 
@@ -89,49 +234,120 @@ public class Watcher {
      * Tracing changed but not staged files (changed1-4)
      */
     public Boolean getChangedFile() {
-        for (File f : staged.Addition.keySet()) {
-            if (commitedFile.containsKey(f)) {
-                if (!cwdFiles.contains(f)) {
-                    changed31.add(f);
-                } else {
-                    String contentHashCWD = Utils.sha1((Object) Utils.readContents(f));
-                    String contentHashStaged = staged.Addition.get(f);
-                    if (!contentHashCWD.equals(contentHashStaged)) {
-                        if (contentHashCWD.equals(commitedFile.get(f))) {
-                            changed21.add(f);
-                        } else {
-                            changed22.put(f, contentHashCWD);
-                        }
-                    }
+        classify();
+        return !changed1.isEmpty() || !changed21.isEmpty() || !changed22.isEmpty() || !changed31.isEmpty() || !changed32.isEmpty() || !changed4.isEmpty();
+    }
 
+    /** Sort every file into the states above, once, in a single pass over three streams sorted by path: the files of the HEAD commit,
+     * the staged files and the files in CWD. Every path is looked at once, with all it is in each of them at hand,
+     * instead of being searched for in the other collections. The files of the HEAD commit are read one Tree at a time along the way. */
+    private void classify() {
+        if (classified) {
+            return;
+        }
+        classified = true;
+        hashAll(cwdFiles, false); // every file in CWD is compared with the staged or the committed version, or is untracked
+        TreeSet<File> stagedFiles = new TreeSet<>(staged.Addition.keySet());
+        stagedFiles.addAll(staged.Removal);
+        Iterator<File> cwd = cwdFiles.iterator();
+        Iterator<File> index = stagedFiles.iterator();
+        Iterator<Map.Entry<File, String>> commited = commitedFiles();
+        File w = cwd.hasNext() ? cwd.next() : null;
+        File i = index.hasNext() ? index.next() : null;
+        Map.Entry<File, String> c = commited.hasNext() ? commited.next() : null;
+        while (w != null || i != null || c != null) {
+            File f = min(min(w, i), c == null ? null : c.getKey());
+            String commitedHash = null;
+            boolean inCWD = f.equals(w);
+            if (inCWD) {
+                w = cwd.hasNext() ? cwd.next() : null;
+            }
+            if (f.equals(i)) {
+                i = index.hasNext() ? index.next() : null;
+            }
+            if (c != null && f.equals(c.getKey())) {
+                commitedHash = c.getValue();
+                c = commited.hasNext() ? commited.next() : null;
+            }
+            classify(f, inCWD ? contentHash(f) : hiddenHash(f), staged.Addition.get(f), staged.Removal.contains(f), commitedHash);
+        }
+    }
+
+    /** The SHA1 of the content of file F, staged or committed but not listed in CWD, if it's only been left out by the ignore rules:
+     * as in Git, they don't apply to files already tracked. Null if F doesn't exist. Such files have no stat data and are hashed every time. */
+    private String hiddenHash(File f) {
+        if (ignored.isEmpty() || !f.isFile() || !ignored.excludes(Commit.relativePath(f), false)) {
+            return null;
+        }
+        return Utils.sha1File(f);
+    }
+
+    private static File min(File a, File b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /** Sort file F into the states above, given the SHA1 of its content in CWD, of its staged version, whether it's staged for removal,
+     * and the SHA1 of its version in the HEAD commit. The SHA1s are null where F doesn't exist. */
+    private void classify(File f, String cwdHash, String stagedHash, boolean removed, String commitedHash) {
+        if (cwdHash != null && stagedHash == null) {
+            if (commitedHash == null) {
+                untracked1.put(f, cwdHash);
+            }
+            if (removed) {
+                if (cwdHash.equals(stagedHash)) {
+                    untracked21.add(f);
+                } else {
+                    untracked22.put(f, cwdHash);
                 }
             }
-            else {
-                if (!cwdFiles.contains(f)) {
+        }
+        if (stagedHash != null) {
+            if (cwdHash == null) {
+                if (commitedHash != null) {
+                    changed31.add(f);
+                } else {
                     changed32.add(f);
+                }
+            } else if (!cwdHash.equals(stagedHash)) {
+                if (commitedHash != null && cwdHash.equals(commitedHash)) {
+                    changed21.add(f);
                 } else {
-                    String contentHashCWD = Utils.sha1((Object) Utils.readContents(f));
-                    String contentHashStaged = staged.Addition.get(f);
-                    if (!contentHashStaged.equals(contentHashCWD)) {
-                        changed22.put(f, contentHashCWD);
-                    }
+                    changed22.put(f, cwdHash);
                 }
             }
         }
-        for (File f : commitedFile.keySet()) {
-            if (!cwdFiles.contains(f)) {
-                if (!staged.Removal.contains(f)) {
+        if (commitedHash != null) {
+            if (cwdHash == null) {
+                if (!removed) {
                     changed4.add(f);
                 }
-            }
-            else {
-                String contentHash = Utils.sha1((Object) Utils.readContents(f));
-                if (!contentHash.equals(commitedFile.get(f)) && !staged.Addition.containsKey(f)) {
-                    changed1.put(f, contentHash);
-                }
+            } else if (!cwdHash.equals(commitedHash) && stagedHash == null) {
+                changed1.put(f, cwdHash);
             }
         }
-        return !changed1.isEmpty() || !changed21.isEmpty() || !changed22.isEmpty() || !changed31.isEmpty() || !changed32.isEmpty() || !changed4.isEmpty();
+    }
+
+    /** The files of the HEAD commit with the SHA1s of their blobs, sorted by path. */
+    private Iterator<Map.Entry<File, String>> commitedFiles() {
+        if (head.RootTree == null) { // a legacy commit lists its files itself
+            return new TreeMap<>(head.Blobs).entrySet().iterator();
+        }
+        Iterator<Map.Entry<String, String>> files = Tree.walk(store, head.RootTree);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return files.hasNext();
+            }
+
+            @Override
+            public Map.Entry<File, String> next() {
+                Map.Entry<String, String> e = files.next();
+                return new AbstractMap.SimpleImmutableEntry<>(Commit.absoluteFile(e.getKey()), e.getValue());
+            }
+        };
     }
 
     /** Take in an absolute path, returns the relative path based on CWD. */
@@ -146,16 +362,17 @@ public class Watcher {
     public void getStatus() {
         getUntrackedFile();
         getChangedFile();
+        saveStats();
         System.out.println("=== Branches ===");
         if (Commit.isDetached()) {
             String SHA1 = Utils.readContentsAsString(repo.HEAD);
             System.out.println("*" + "(HEAD detached at " + SHA1.substring(0,7) + ")");
-            for (File f : repo.LOCAL_BRANCH_FOLDER.listFiles()) {
+            for (File f : new TreeSet<>(Arrays.asList(repo.LOCAL_BRANCH_FOLDER.listFiles()))) {
                 System.out.println(f.getName());
             }
         } else {
             File HEAD = new File(Utils.readContentsAsString(repo.HEAD).substring(5));
-            for (File f : repo.LOCAL_BRANCH_FOLDER.listFiles()) {
+            for (File f : new TreeSet<>(Arrays.asList(repo.LOCAL_BRANCH_FOLDER.listFiles()))) {
                 if (f.equals(HEAD)) {
                     System.out.println("*" + f.getName());
                 } else {
@@ -166,14 +383,14 @@ public class Watcher {
         System.out.println();
 
         System.out.println("=== Staged Files ===");
-        for (File f : staged.Addition.keySet()) {
+        for (File f : new TreeSet<>(staged.Addition.keySet())) {
             System.out.println(getRelativePath(f));
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        for (File f : staged.Removal) {
+        for (File f : new TreeSet<>(staged.Removal)) {
             System.out.println(getRelativePath(f));
-        };
+        }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
         for (File f : changed1.keySet()) {
@@ -211,27 +428,36 @@ public class Watcher {
     /** Adding a file for addition. Not like real Git, where "add" also responsible for adding a file for removal.
      * And this method only takes in the file's ABSOLUTE path */
     public void addOne(File f) {
-        byte[] content = Utils.readContents(f);
-        String contentHash = Utils.sha1((Object) content);
+        byte[] content = null;
+        String contentHash;
+        String commitedHash = head.blobAt(f);
+        StagedFile.Stat stat = StagedFile.Stat.of(f);
+        if (f.length() > ObjectStore.STREAM_THRESHOLD) {
+            contentHash = store.writeBlobStream(f); // hashed and stored in one pass, never held in memory
+        } else {
+            content = Utils.readContents(f);
+            contentHash = Utils.sha1((Object) content);
+        }
+        record(f, stat == null ? StagedFile.Stat.unknown(contentHash) : stat.withHash(contentHash));
 //        update the stagingArea
         if (!staged.Addition.containsKey(f)) {
             if (staged.Removal.contains(f)) {
                 staged.Removal.remove(f); //1.2
-                if (!contentHash.equals(commitedFile.get(f))) {
+                if (!contentHash.equals(commitedHash)) {
                     staged.Addition.put(f, contentHash); //1.2.2
                 }
             } else {
-                if (!commitedFile.containsKey(f)) {
+                if (commitedHash == null) {
                     staged.Addition.put(f, contentHash); //1.1
                 } else {
-                    if (!contentHash.equals(commitedFile.get(f))) {
+                    if (!contentHash.equals(commitedHash)) {
                         staged.Addition.put(f, contentHash); //2.1
                     }
                 }
             }
         } else {
             if (!staged.Addition.get(f).equals(contentHash)) {
-                if (commitedFile.containsKey(f) && commitedFile.get(f).equals(contentHash)) {
+                if (contentHash.equals(commitedHash)) {
                     staged.Addition.remove(f); //2.2.1
                 } else {
                     staged.Addition.put(f, contentHash); //2.2.2
@@ -240,12 +466,8 @@ public class Watcher {
         }
 
 //        store the staged file with new version of contents into .gitlet/objects folder, so we should have the right contents when commiting even though the file was deleted/modified in CWD. */
-        Blob blob = new Blob(content);
-        File thisBlobFolder = Utils.join(repo.OBJECT_FOLDER, contentHash.substring(0,2));
-        File thisBlob = Utils.join(thisBlobFolder, contentHash.substring(2));
-        if (!thisBlob.exists()) {
-            thisBlobFolder.mkdir();
-            Utils.writeObject(thisBlob, blob);
+        if (content != null) {
+            store.writeBlob(contentHash, content, commitedHash);
         }
 //        update the staging file locally
         Utils.writeObject(repo.STAGING_FILE, staged);
@@ -256,18 +478,19 @@ public class Watcher {
      * Furthermore, it deletes the file from CWD if one haven't done so (so we can delete and stage a file for removal directly through Gitlet in one step).
      * And this method only takes in the file's ABSOLUTE path */
     public void removeOne(File f) {
+        boolean commited = head.blobAt(f) != null;
         if (staged.Addition.containsKey(f)) {
             staged.Addition.remove(f);
-            if (commitedFile.containsKey(f)) {
+            if (commited) {
                 staged.Removal.add(f);
                 cwdFiles.remove(f);
-                Utils.restrictedDelete(f);
+                deleteWorkingFile(f);
             }
         } else {
-            if (commitedFile.containsKey(f)) {
+            if (commited) {
                 staged.Removal.add(f);
                 cwdFiles.remove(f);
-                Utils.restrictedDelete(f);
+                deleteWorkingFile(f);
             } else {
                 System.out.println("No reason to remove this file. ");
             }
@@ -276,8 +499,21 @@ public class Watcher {
         Utils.writeObject(repo.STAGING_FILE, staged);
     }
 
-    /** Update the stagingArea once for all */
+    /** Delete file F, which must be in the project folder, and the folders it leaves empty. Unlike Utils.restrictedDelete, files in its
+     * subfolders are allowed. */
+    private static void deleteWorkingFile(File f) {
+        if (!f.getAbsolutePath().startsWith(repo.PROJECT_FOLDER.getAbsolutePath() + File.separator) || f.isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        f.delete();
+        Commit.deleteEmptyFolders(f.getParentFile());
+    }
+
+    /** Update the stagingArea once for all ("add ."), in one pass over CWD on the worker threads: every file whose stat data doesn't vouch
+     * for its content is read once, hashed, and stored as a blob right away if it's new. Files whose SHA1 was only known from their stat data
+     * are stored afterwards if they are staged and their blob is missing. The index is written once, at the end. */
     public void updateAll() {
+        hashAll(cwdFiles, true);
         getUntrackedFile();
         getChangedFile();
         for (File f : untracked1.keySet()) {
@@ -309,27 +545,83 @@ public class Watcher {
         for (File f : changed4) {
             staged.Removal.add(f);
         }
-//      update stagingArea locally
-        Utils.writeObject(repo.STAGING_FILE, staged);
-//      write NEW blob objects into .gitlet/objects folder
-        for (File f : staged.Addition.keySet()) {
-            String contentHash = staged.Addition.get(f);
-            File BLOB_FOLDER = Utils.join(repo.OBJECT_FOLDER, contentHash.substring(0,2));
-            if (!BLOB_FOLDER.exists()) {
-                BLOB_FOLDER.mkdirs();
-                Blob blob = new Blob(Utils.readContents(f));
-                Utils.writeObject(Utils.join(BLOB_FOLDER, contentHash.substring(2)), blob);
+        List<File> missing = new ArrayList<>();
+        for (Map.Entry<File, String> e : staged.Addition.entrySet()) {
+            if (!store.contains(e.getValue())) {
+                missing.add(e.getKey());
             }
-            else {
-                for (String fileName : Utils.plainFilenamesIn(BLOB_FOLDER)) {
-                    if (fileName.equals(contentHash.substring(2))) {
-                        break;
-                    }
-                    Blob blob = new Blob(Utils.readContents(f));
-                    Utils.writeObject(Utils.join(BLOB_FOLDER, contentHash.substring(2)), blob);
-                }
+        }
+        Parallel.map(missing, this::storeFile);
+//      update stagingArea locally, with the stat data of this pass
+        statsChanged = true;
+        saveStats();
+    }
+
+    /** The files of the index, that is the HEAD commit with the staged changes applied, with the SHA1s of their blobs. */
+    SortedMap<File, String> indexFiles() {
+        SortedMap<File, String> res = new TreeMap<>();
+        for (Iterator<Map.Entry<File, String>> it = commitedFiles(); it.hasNext(); ) {
+            Map.Entry<File, String> e = it.next();
+            res.put(e.getKey(), e.getValue());
+        }
+        res.putAll(staged.Addition);
+        res.keySet().removeAll(staged.Removal);
+        return res;
+    }
+
+    /** The differences between the files of BASE (with the SHA1s of their blobs) and CWD, for the files in BASE or in the index,
+     * ordered by path. A change is after the SHA1 of the working file, whose content is in CWD, or null if it's gone. Untracked files
+     * don't count. The working files are hashed on the worker threads, and those whose stat data is unchanged aren't even read, so
+     * unchanged files are skipped by their SHA1. */
+    List<Tree.Change> changesInCWD(Map<File, String> base) {
+        TreeSet<File> files = new TreeSet<>(base.keySet());
+        files.addAll(indexFiles().keySet());
+        Set<File> listed = new HashSet<>(cwdFiles);
+        List<File> present = new ArrayList<>();
+        for (File f : files) {
+            if (listed.contains(f) || f.isFile()) { // a tracked file may not be listed if it's ignored
+                present.add(f);
+            }
+        }
+        hashAll(present, false);
+        Set<File> exist = new HashSet<>(present);
+        List<Tree.Change> res = new ArrayList<>();
+        for (File f : files) {
+            String before = base.get(f);
+            String after = exist.contains(f) ? contentHash(f) : null;
+            if (!Objects.equals(before, after)) {
+                res.add(new Tree.Change(Commit.relativePath(f), before, after));
+            }
+        }
+        return res;
+    }
+
+    /** The SHA1 of the content of working file F as far as it's known from classifying the files, null if it isn't. */
+    String knownHash(File f) {
+        return hashed.get(f);
+    }
+
+    /** Record that a checkout wrote the files of WRITTEN, with their stat data and the SHA1 of the blob written (null if the file couldn't
+     * be looked at), and deleted the files of DELETED. The new stat data is written with the index, see saveStats. */
+    void checkedOut(Map<File, StagedFile.Stat> written, Collection<File> deleted) {
+        Set<File> files = new HashSet<>(cwdFiles);
+        files.removeAll(deleted);
+        files.addAll(written.keySet());
+        cwdFiles.clear();
+        cwdFiles.addAll(files);
+        Collections.sort(cwdFiles);
+        for (Map.Entry<File, StagedFile.Stat> e : written.entrySet()) {
+            hashed.remove(e.getKey());
+            if (e.getValue() == null) {
+                staged.getStats().remove(e.getKey());
+            } else {
+                record(e.getKey(), e.getValue());
             }
         }
+        for (File f : deleted) {
+            hashed.remove(f);
+        }
+        statsChanged = true;
     }
 
     public List<File> getCWDFiles() {